@@ -0,0 +1,127 @@
+package com.magadiflo.jwt.verifier;
+
+import com.auth0.jwt.interfaces.ECDSAKeyProvider;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Claves públicas (ES256) obtenidas del JWKS (/.well-known/jwks.json) del servicio de usuarios.
+ * <p>
+ * Las claves se guardan en memoria por kid. El JWKS solo se vuelve a descargar cuando llega un
+ * token con un kid desconocido (rotación de claves), y como máximo una vez cada minRefreshIntervalMs,
+ * así un token con un kid inventado no provoca una descarga por petición.
+ * <p>
+ * Si el JWKS no se puede descargar o leer se conservan las claves anteriores y se lanza una
+ * IllegalStateException, que java-jwt convierte en SignatureVerificationException.
+ */
+public class JwksKeyProvider implements ECDSAKeyProvider {
+
+    private static final String EC_CURVE = "secp256r1";
+    private static final int TIMEOUT_MS = 5000;
+
+    private final URL jwksUrl;
+    private final long minRefreshIntervalMs;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ECParameterSpec p256;
+
+    private volatile Map<String, ECPublicKey> keys = Collections.emptyMap();
+    private volatile long lastRefresh;
+
+    public JwksKeyProvider(URL jwksUrl, long minRefreshIntervalMs) {
+        this.jwksUrl = jwksUrl;
+        this.minRefreshIntervalMs = minRefreshIntervalMs;
+        try {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec(EC_CURVE));
+            this.p256 = parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("P-256 is not supported by this JVM", e);
+        }
+    }
+
+    @Override
+    public ECPublicKey getPublicKeyById(String keyId) {
+        ECPublicKey key = this.keys.get(keyId);
+        if (key == null && this.refreshAllowed()) {
+            this.refresh();
+            key = this.keys.get(keyId);
+        }
+        return key; //null: java-jwt rechaza el token
+    }
+
+    //Este módulo solo verifica tokens
+    @Override
+    public ECPrivateKey getPrivateKey() {
+        return null;
+    }
+
+    @Override
+    public String getPrivateKeyId() {
+        return null;
+    }
+
+    private boolean refreshAllowed() {
+        return System.currentTimeMillis() - this.lastRefresh >= this.minRefreshIntervalMs;
+    }
+
+    private synchronized void refresh() {
+        if (!this.refreshAllowed()) {
+            return; //Otro hilo acaba de descargarlo
+        }
+        this.lastRefresh = System.currentTimeMillis();
+        Map<String, ECPublicKey> loaded = new HashMap<>();
+        try {
+            for (JsonNode jwk : this.download().path("keys")) {
+                if ("EC".equals(jwk.path("kty").asText()) && "P-256".equals(jwk.path("crv").asText()) && jwk.hasNonNull("kid")) {
+                    loaded.put(jwk.get("kid").asText(), this.toPublicKey(jwk));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            //Cualquier otra excepción saldría de JWTVerifier.verify() sin convertirse en JWTVerificationException
+            throw new IllegalStateException("Could not load the JWKS from " + this.jwksUrl, e);
+        }
+        this.keys = Collections.unmodifiableMap(loaded);
+    }
+
+    private JsonNode download() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.jwksUrl.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        try (InputStream inputStream = connection.getInputStream()) {
+            return this.objectMapper.readTree(inputStream);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private ECPublicKey toPublicKey(JsonNode jwk) {
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        BigInteger x = new BigInteger(1, decoder.decode(jwk.path("x").asText()));
+        BigInteger y = new BigInteger(1, decoder.decode(jwk.path("y").asText()));
+        try {
+            return (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(new ECPoint(x, y), this.p256));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid JWK " + jwk.path("kid").asText(), e);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.magadiflo.jwt.verifier;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.interfaces.JWTVerifier;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Verifica localmente, sin llamar al servicio de usuarios, los tokens firmados con ES256.
+ * <p>
+ * Uso:
+ * <pre>
+ * JwtTokenVerifier verifier = new JwtTokenVerifier(new URL("http://users-host:8081/.well-known/jwks.json"),
+ *         "By Magadiflo company");
+ * DecodedJWT jwt = verifier.verify(token); //Lanza JWTVerificationException si no es válido o no se pudo leer el JWKS
+ * if (JwtTokenVerifier.hasPermissions(jwt, JwtTokenVerifier.USER_READ | JwtTokenVerifier.USER_UPDATE)) { ... }
+ * </pre>
+ * Los permisos viajan en el claim perms como una máscara de bits: 1 = user:read,
+ * 2 = user:create, 4 = user:update, 8 = user:delete (mismo orden que UserPermission
+ * en el servicio de usuarios). Los tokens antiguos solo tienen el claim authorities.
+ * Es thread-safe, se debe crear una sola instancia por aplicación.
+ */
+public class JwtTokenVerifier {
+
+    public static final String AUTHORITIES = "authorities";
+    public static final String PERMISSIONS = "perms";
+
+    public static final long USER_READ = 1L;
+    public static final long USER_CREATE = 1L << 1;
+    public static final long USER_UPDATE = 1L << 2;
+    public static final long USER_DELETE = 1L << 3;
+
+    private static final String[] PERMISSION_NAMES = {"user:read", "user:create", "user:update", "user:delete"};
+    private static final long DEFAULT_MIN_REFRESH_INTERVAL_MS = 60_000;
+
+    private final JWTVerifier verifier;
+
+    public JwtTokenVerifier(URL jwksUrl, String issuer) {
+        this(jwksUrl, issuer, DEFAULT_MIN_REFRESH_INTERVAL_MS);
+    }
+
+    public JwtTokenVerifier(URL jwksUrl, String issuer, long minRefreshIntervalMs) {
+        Algorithm algorithm = Algorithm.ECDSA256(new JwksKeyProvider(jwksUrl, minRefreshIntervalMs));
+        this.verifier = JWT.require(algorithm).withIssuer(issuer).build();
+    }
+
+    public DecodedJWT verify(String token) {
+        return this.verifier.verify(token);
+    }
+
+    public static long getPermissionMask(DecodedJWT jwt) {
+        Claim permissions = jwt.getClaim(PERMISSIONS);
+        if (!permissions.isNull()) {
+            return permissions.asLong();
+        }
+        long mask = 0;
+        List<String> authorities = jwt.getClaim(AUTHORITIES).asList(String.class);
+        if (authorities != null) {
+            for (int bit = 0; bit < PERMISSION_NAMES.length; bit++) {
+                if (authorities.contains(PERMISSION_NAMES[bit])) {
+                    mask |= 1L << bit;
+                }
+            }
+        }
+        return mask;
+    }
+
+    //true si el token tiene TODOS los permisos de requiredMask
+    public static boolean hasPermissions(DecodedJWT jwt, long requiredMask) {
+        return (getPermissionMask(jwt) & requiredMask) == requiredMask;
+    }
+
+    public List<String> getAuthorities(DecodedJWT jwt) {
+        long mask = getPermissionMask(jwt);
+        if (mask == 0) {
+            return Collections.emptyList();
+        }
+        List<String> authorities = new ArrayList<>(PERMISSION_NAMES.length);
+        for (int bit = 0; bit < PERMISSION_NAMES.length; bit++) {
+            if ((mask & (1L << bit)) != 0) {
+                authorities.add(PERMISSION_NAMES[bit]);
+            }
+        }
+        return authorities;
+    }
+
+}
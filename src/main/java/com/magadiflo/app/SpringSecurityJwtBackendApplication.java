@@ -1,27 +1,16 @@
 package com.magadiflo.app;
 
-import com.magadiflo.app.constant.FileConstant;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.web.cors.CorsConfiguration;
-import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
-import org.springframework.web.filter.CorsFilter;
-
-import java.io.File;
-import java.util.Arrays;
-import java.util.Collections;
 
 @SpringBootApplication
 public class SpringSecurityJwtBackendApplication {
 
 	public static void main(String[] args) {
+		//El directorio de las imágenes (FileConstant.USER_FOLDER) se crea al guardar la primera imagen de cada usuario
 		SpringApplication.run(SpringSecurityJwtBackendApplication.class, args);
-
-		//Creando el directorio donde se almacenarán las imágenes
-		//En el caso de mi pc sería: C:\\Users\\USUARIO\\supportportal\\user
-		new File(FileConstant.USER_FOLDER).mkdirs();
 	}
 
 	@Bean
@@ -29,27 +18,4 @@ public class SpringSecurityJwtBackendApplication {
 		return new BCryptPasswordEncoder();
 	}
 
-	/**
-	 * Exponemos nuestras cabeceras personalizadas, como el Jwt-Token, Authorization, etc.
-	 * Para que desde el frontend se puedan acceder a ellos
-	 */
-	@Bean
-	public CorsFilter corsFilter() {
-		UrlBasedCorsConfigurationSource urlBasedCorsConfigurationSource = new UrlBasedCorsConfigurationSource();
-
-		CorsConfiguration corsConfiguration = new CorsConfiguration();
-		corsConfiguration.setAllowCredentials(true);
-		corsConfiguration.setAllowedOrigins(Arrays.asList("http://localhost:4200", "http://192.168.0.3"));
-		corsConfiguration.setAllowedHeaders(Arrays.asList("Origin", "Access-Control-Allow-Origin", "Content-Type",
-				"Accept", "Jwt-Token", "Authorization", "Origin", "X-Requested-With", "Access-Control-Request-Method",
-				"Access-Control-Request-Headers"));
-		corsConfiguration.setExposedHeaders(Arrays.asList("Origin", "Content-Type", "Accept", "Jwt-Token", "Authorization",
-				"Access-Control-Allow-Origin", "Access-Control-Allow-Credentials"));
-		corsConfiguration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-
-		urlBasedCorsConfigurationSource.registerCorsConfiguration("/**", corsConfiguration); // "/**", representa todas las rutas del backend
-
-		return new CorsFilter(urlBasedCorsConfigurationSource);
-	}
-
 }
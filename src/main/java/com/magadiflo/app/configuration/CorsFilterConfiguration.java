@@ -0,0 +1,49 @@
+package com.magadiflo.app.configuration;
+
+import com.magadiflo.app.utility.CorsOriginRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
+import org.springframework.web.filter.CorsFilter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Los orígenes permitidos se configuran en el application.yml (cors.allowed-origins y
+ * cors.allowed-origin-patterns), ver CorsOriginRegistry.
+ * <p>
+ * cors.max-age-seconds, tiempo que el navegador guarda la respuesta del preflight (OPTIONS),
+ * sin él el navegador envía un preflight antes de cada petición desde el frontend.
+ * El CorsFilter responde el preflight sin continuar con el resto de filtros.
+ */
+@Configuration
+public class CorsFilterConfiguration {
+
+    /**
+     * Exponemos nuestras cabeceras personalizadas, como el Jwt-Token, Authorization, etc.
+     * Para que desde el frontend se puedan acceder a ellos
+     */
+    @Bean
+    public CorsFilter corsFilter(@Value("${cors.allowed-origins:}") List<String> allowedOrigins,
+                                 @Value("${cors.allowed-origin-patterns:}") List<String> allowedOriginPatterns,
+                                 @Value("${cors.max-age-seconds:3600}") long maxAgeSeconds) {
+        UrlBasedCorsConfigurationSource urlBasedCorsConfigurationSource = new UrlBasedCorsConfigurationSource();
+
+        CorsOriginRegistry corsConfiguration = new CorsOriginRegistry(allowedOrigins, allowedOriginPatterns);
+        corsConfiguration.setAllowCredentials(true);
+        corsConfiguration.setAllowedHeaders(Arrays.asList("Origin", "Access-Control-Allow-Origin", "Content-Type",
+                "Accept", "Jwt-Token", "Authorization", "Origin", "X-Requested-With", "Access-Control-Request-Method",
+                "Access-Control-Request-Headers", "If-Match"));
+        corsConfiguration.setExposedHeaders(Arrays.asList("Origin", "Content-Type", "Accept", "Jwt-Token", "Authorization",
+                "Access-Control-Allow-Origin", "Access-Control-Allow-Credentials", "ETag", "Retry-After"));
+        corsConfiguration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
+        corsConfiguration.setMaxAge(maxAgeSeconds);
+
+        urlBasedCorsConfigurationSource.registerCorsConfiguration("/**", corsConfiguration); // "/**", representa todas las rutas del backend
+
+        return new CorsFilter(urlBasedCorsConfigurationSource);
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.magadiflo.app.configuration;
+
+import com.magadiflo.app.utility.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DataSource de la aplicación: un pool (HikariCP) para el primario y uno por cada réplica
+ * de lectura (datasource.replicas.urls), ver ReplicaRoutingDataSource.
+ * <p>
+ * Tamaño de cada pool: si no se indica datasource.pool.maximum-size, se usa la fórmula
+ * recomendada por HikariCP: (núcleos * 2) + 1. Más conexiones que eso solo aumentan la
+ * competencia por CPU y disco en el servidor de BD. El pool es de tamaño fijo (minimumIdle = máximo).
+ * <p>
+ * Métricas (/actuator/metrics): hikaricp.connections.* por pool (tag pool) y
+ * datasource.replica.lag / datasource.replica.healthy por réplica. Se registran desde un MeterBinder
+ * y no al crear el DataSource: el MeterRegistry depende a su vez del DataSource
+ * (dataSourcePoolMetadataMeterBinder), pedirlo aquí formaría un ciclo entre beans.
+ */
+@Configuration
+public class DataSourceConfiguration {
+
+    private static final String PRIMARY_POOL_NAME = "users-db-primary";
+    private static final String REPLICA_POOL_PREFIX = "users-db-replica-";
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties,
+                                 @Value("${datasource.pool.maximum-size:0}") int maximumPoolSize,
+                                 @Value("${datasource.replicas.urls:}") String[] replicaUrls,
+                                 @Value("${datasource.replicas.max-lag-seconds:5}") long maxLagSeconds,
+                                 @Value("${datasource.replicas.lag-check-interval-ms:5000}") long lagCheckIntervalMs) {
+        int poolSize = maximumPoolSize > 0 ? maximumPoolSize : Runtime.getRuntime().availableProcessors() * 2 + 1;
+
+        HikariDataSource primary = this.createPool(properties, properties.determineUrl(), PRIMARY_POOL_NAME, poolSize);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : replicaUrls) {
+            if (StringUtils.isNotBlank(url)) {
+                String name = REPLICA_POOL_PREFIX + (replicas.size() + 1);
+                replicas.put(name, this.createPool(properties, url.trim(), name, poolSize));
+            }
+        }
+
+        this.routingDataSource = new ReplicaRoutingDataSource(primary, replicas, maxLagSeconds, lagCheckIntervalMs);
+        return new LazyConnectionDataSourceProxy(this.routingDataSource);
+    }
+
+    @Bean
+    public MeterBinder replicaRoutingMeterBinder(DataSource dataSource) throws SQLException {
+        ReplicaRoutingDataSource routing = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        return meterRegistry -> {
+            routing.getResolvedDataSources().values().forEach(target -> {
+                HikariDataSource pool = (HikariDataSource) target;
+                if (pool.getMetricsTrackerFactory() == null) {
+                    pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+                }
+            });
+            for (String replica : routing.getReplicaNames()) {
+                Gauge.builder("datasource.replica.lag", routing, r -> r.getReplicationLag(replica))
+                        .tag("replica", replica).baseUnit("seconds").register(meterRegistry);
+                Gauge.builder("datasource.replica.healthy", routing, r -> r.isHealthy(replica) ? 1 : 0)
+                        .tag("replica", replica).register(meterRegistry);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void closePools() throws IOException {
+        if (this.routingDataSource != null) {
+            this.routingDataSource.close();
+        }
+        this.pools.forEach(HikariDataSource::close);
+    }
+
+    private HikariDataSource createPool(DataSourceProperties properties, String url, String poolName, int poolSize) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(poolName);
+        pool.setJdbcUrl(url);
+        pool.setUsername(properties.determineUsername());
+        pool.setPassword(properties.determinePassword());
+        pool.setDriverClassName(properties.determineDriverClassName());
+        pool.setMaximumPoolSize(poolSize);
+        pool.setMinimumIdle(poolSize);
+        this.pools.add(pool);
+        return pool;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.magadiflo.app.configuration;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Spring Boot registra en el ObjectMapper compartido todos los beans de tipo Module.
+ * <p>
+ * AfterburnerModule, reemplaza la reflexión con clases generadas en tiempo de ejecución para
+ * leer y escribir las propiedades (ejm. de User y HttpResponse), lo que reduce el uso de CPU
+ * al serializar listas grandes como /user/list.
+ * <p>
+ * Las fechas son java.time.Instant, las serializa el JavaTimeModule que Spring Boot ya registra.
+ * <p>
+ * Formatos binarios: si el cliente envía Accept: application/cbor o application/x-jackson-smile
+ * la respuesta se serializa en ese formato, con la misma configuración (módulos, fechas) que el JSON.
+ * Spring MVC ya incluye convertidores CBOR y Smile con un ObjectMapper propio (sin Afterburner y con
+ * las fechas como números). HttpMessageConverters coloca los beans de convertidores delante del
+ * convertidor por defecto del mismo tipo, pero mantiene a este último, por eso aquí se quitan los
+ * convertidores CBOR y Smile por defecto. El convertidor JSON va antes, así JSON sigue siendo el
+ * formato por defecto cuando el cliente acepta cualquier tipo.
+ */
+@Configuration
+public class JacksonConfiguration {
+
+    @Bean
+    public Module afterburnerModule() {
+        return new AfterburnerModule();
+    }
+
+    //Jackson2ObjectMapperBuilder es prototype en Spring Boot, cada bean recibe un builder nuevo
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new MappingJackson2CborHttpMessageConverter(objectMapperBuilder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new MappingJackson2SmileHttpMessageConverter(objectMapperBuilder.factory(new SmileFactory()).build());
+    }
+
+    //Igual que el de HttpMessageConvertersAutoConfiguration, pero sin los CBOR y Smile por defecto
+    @Bean
+    public HttpMessageConverters messageConverters(ObjectProvider<HttpMessageConverter<?>> converters) {
+        return new HttpMessageConverters(converters.orderedStream().collect(Collectors.toList())) {
+            @Override
+            protected List<HttpMessageConverter<?>> postProcessConverters(List<HttpMessageConverter<?>> converters) {
+                List<HttpMessageConverter<?>> result = new ArrayList<>(converters.size());
+                Set<Class<?>> binaryConverters = new HashSet<>();
+                for (HttpMessageConverter<?> converter : converters) {
+                    boolean binary = converter instanceof MappingJackson2CborHttpMessageConverter
+                            || converter instanceof MappingJackson2SmileHttpMessageConverter;
+                    if (!binary || binaryConverters.add(converter.getClass())) {
+                        result.add(converter);
+                    }
+                }
+                return result;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.magadiflo.app.configuration;
+
+import com.magadiflo.app.listener.SlowQueryListener;
+import com.magadiflo.app.utility.RepositoryMethodTracker;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import javax.sql.DataSource;
+
+/**
+ * Capa de observación de las consultas SQL (reemplaza al spring.jpa.show-sql).
+ * <p>
+ * 1) Envuelve el DataSource con un proxy (datasource-proxy) que mide el tiempo
+ * de cada sentencia y se lo pasa al SlowQueryListener.
+ * 2) Agrega a cada repositorio de Spring Data un advice (RepositoryMethodTracker)
+ * para saber qué método del repositorio originó la sentencia.
+ * <p>
+ * Los métodos son static, ya que los BeanPostProcessor deben crearse antes que
+ * el resto de beans de la configuración.
+ * Se puede desactivar con query-tracing.enabled: false
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "query-tracing", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class QueryTracingConfiguration {
+
+    public static final String DATASOURCE_PROXY_NAME = "users-db";
+
+    @Bean
+    public static BeanPostProcessor queryTracingDataSourcePostProcessor(@Value("${query-tracing.slow-threshold-ms:200}") long slowThresholdMs,
+                                                                        @Value("${query-tracing.sample-rate:0.0}") double sampleRate) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof ProxyDataSource)) {
+                    return ProxyDataSourceBuilder.create((DataSource) bean)
+                            .name(DATASOURCE_PROXY_NAME)
+                            .listener(new SlowQueryListener(slowThresholdMs, sampleRate))
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public static BeanPostProcessor repositoryMethodTrackerPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport) {
+                    ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(repositoryFactory ->
+                            repositoryFactory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+                                    proxyFactory.addAdvice(new RepositoryMethodTracker(repositoryInformation.getRepositoryInterface()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.magadiflo.app.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Habilita los métodos @Scheduled (ejm. LoginAttemptService.unlockExpiredAccounts)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfiguration {
+}
@@ -8,9 +8,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
-import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
@@ -21,7 +21,6 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 
 @Configuration
 @EnableWebSecurity
-@EnableGlobalMethodSecurity(prePostEnabled = true) //Nos permitirá establecer la seguridad al nivel de método
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     private final JwtAuthorizationFilter jwtAuthorizationFilter;
@@ -56,8 +55,9 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
      * pero necesitamos decirle a spring que eso tiene una configuración.
      * Creamos un archivo de configuración que implementa WebMvcConfigurer y
      * se especifica los orígenes de las llamadas así como los métodos permitidos.
-     * En el método configure(...) habilitamos el cors, pero en la clase principal de esta aplicación
-     * definimos como un bean la configuración de nuestro cors personalizado
+     * En el método configure(...) habilitamos el cors, pero en el CorsFilterConfiguration
+     * definimos como un bean la configuración de nuestro cors personalizado.
+     * Las peticiones OPTIONS no requieren autenticación (el JwtAuthorizationFilter tampoco las procesa)
      */
     @Override
     protected void configure(HttpSecurity http) throws Exception {
@@ -66,7 +66,9 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .and()
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 .and()
-                .authorizeRequests().antMatchers(SecurityConstant.PUBLIC_URLS).permitAll() //Todos pueden acceder a estas urls
+                .authorizeRequests().antMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+                .antMatchers(SecurityConstant.AVATAR_SPRITE_URL).authenticated() //Debe ir antes de PUBLIC_URLS
+                .antMatchers(SecurityConstant.PUBLIC_URLS).permitAll() //Todos pueden acceder a estas urls
                 .anyRequest().authenticated() //Cualquier otra solicitud debe estar autenticado
                 .and()
                 .exceptionHandling().accessDeniedHandler(this.jwtAccessDeniedHandler)
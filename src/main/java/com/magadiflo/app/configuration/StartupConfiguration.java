@@ -0,0 +1,35 @@
+package com.magadiflo.app.configuration;
+
+import com.magadiflo.app.service.AuditService;
+import com.magadiflo.app.service.UserChangeFeed;
+import com.magadiflo.app.service.UserPurgeService;
+import com.magadiflo.app.service.impl.SnowflakeUserIdGenerator;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Con spring.main.lazy-initialization: true (perfil prod) los beans se crean la primera vez
+ * que se usan, lo que reduce el tiempo de arranque. Aquí se listan los que deben crearse
+ * siempre al iniciar:
+ * <p>
+ * - SmartInitializingSingleton: las migraciones (UserSequenceMigration, AuthoritiesMigration
+ * desde el PermissionResolver y, si se habilita, LegacyAuthoritiesColumnMigration) deben ejecutarse
+ * antes de recibir peticiones, y Spring solo llama a afterSingletonsInstantiated() en los beans
+ * que ya fueron creados. El LoginAttemptService también cuenta ahí las cuentas bloqueadas para la métrica login.locked.accounts.
+ * - AuditService: inicia el hilo que escribe los eventos de auditoría.
+ * - UserPurgeService: sus métodos @Scheduled solo se programan si el bean existe.
+ * - UserChangeFeed: su método @Scheduled (limpieza de cambios antiguos) y el hilo que envía los cambios (SSE).
+ * - SnowflakeUserIdGenerator: si falta user-id.node-id la aplicación debe fallar al iniciar, no en el primer registro.
+ */
+@Configuration
+public class StartupConfiguration {
+
+    @Bean
+    public static LazyInitializationExcludeFilter eagerInitializedBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(SmartInitializingSingleton.class, AuditService.class,
+                UserPurgeService.class, UserChangeFeed.class, SnowflakeUserIdGenerator.class);
+    }
+
+}
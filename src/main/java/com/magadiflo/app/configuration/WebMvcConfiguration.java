@@ -0,0 +1,22 @@
+package com.magadiflo.app.configuration;
+
+import com.magadiflo.app.filter.PermissionInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMvcConfiguration implements WebMvcConfigurer {
+
+    private final PermissionInterceptor permissionInterceptor;
+
+    public WebMvcConfiguration(PermissionInterceptor permissionInterceptor) {
+        this.permissionInterceptor = permissionInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this.permissionInterceptor);
+    }
+
+}
@@ -12,6 +12,11 @@ public class FileConstant {
     public static final String FORWARD_SLASH = "/";
     public static final String NOT_AN_IMAGE_FILE = " is not an image file. Please upload an image file";
     public static final String TEMP_PROFILE_IMAGE_BASE_URL = "https://robohash.org/";
+    public static final String UPLOAD_FOLDER = System.getProperty("user.home") + "/supportportal/upload/"; //Imágenes que se están recibiendo (mismo disco que USER_FOLDER)
+    public static final String TRASH_FOLDER = System.getProperty("user.home") + "/supportportal/trash/"; //Carpetas de usuarios eliminados, pendientes de borrar
+    public static final String AUDIT_FOLDER = System.getProperty("user.home") + "/supportportal/audit/";
+    public static final String AUDIT_FILE_PREFIX = "audit-";
+    public static final String AUDIT_FILE_EXTENSION = ".log";
 
     // System.getProperty("user.home"), en el caso de mi pc sería equivalente a: C:\Users\USUARIO
 
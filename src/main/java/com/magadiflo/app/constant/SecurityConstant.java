@@ -9,10 +9,12 @@ public class SecurityConstant {
     public static final String MAGADIFLO_LLC = "By Magadiflo company";
     public static final String MAGADIFLO_ADMINISTRATION = "User Management Portal";
     public static final String AUTHORITIES = "authorities";
+    public static final String PERMISSIONS = "perms"; //Máscara de bits con los permisos (ver UserPermission)
     public static final String FORBIDDEN_MESSAGE = "You need to log in to access this page";
     public static final String ACCESS_DENIED_MESSAGE = "You do not have permission to access this page";
-    public static final String OPTIONS_HTTP_METHOD = "OPTIONS";
-    public static final String[] PUBLIC_URLS = { "/user/login", "/user/register", "/user/image/**" }; //Acceden sin estar autenticados
+    public static final String JWKS_URL = "/.well-known/jwks.json";
+    public static final String[] PUBLIC_URLS = { "/user/login", "/user/register", "/user/image/**", JWKS_URL }; //Acceden sin estar autenticados
+    public static final String AVATAR_SPRITE_URL = "/user/image/sprite"; //Está bajo /user/image/** pero requiere autenticación
     //public static final String[] PUBLIC_URLS = { "**" }; //Solo para probar cualquier url sin necesidad de autenticarnos
 
 }
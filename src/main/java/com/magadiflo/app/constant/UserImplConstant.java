@@ -9,4 +9,8 @@ public class UserImplConstant {
 
     public static final String NO_USER_FOUND_BY_EMAIL = "No user found for email: ";
 
+    public static final String USER_MODIFIED_BY_ANOTHER_REQUEST = "The user was modified by another request. Please reload it and try again";
+    public static final String FIELD_CANNOT_BE_UPDATED = "This user field cannot be updated: ";
+    public static final String INVALID_FIELD_VALUE = "Invalid value for user field: ";
+
 }
@@ -0,0 +1,73 @@
+package com.magadiflo.app.domain;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.magadiflo.app.enumeration.AuditEventType;
+
+import java.time.Instant;
+
+/**
+ * Evento de auditoría (inicio de sesión, bloqueo, cambios en usuarios, etc.).
+ * Se escribe como una línea JSON en los archivos de auditoría (uno por día),
+ * por eso tiene un constructor vacío, para poder leerlo de vuelta con Jackson.
+ */
+public class AuditEvent {
+
+    private AuditEventType type; //LOGIN_FAILURE
+    private String username; //Usuario afectado por el evento
+    private String actor; //Usuario autenticado que realizó la acción, o anonymous
+    private String detail;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = HttpResponse.TIMESTAMP_PATTERN, timezone = HttpResponse.TIMESTAMP_TIMEZONE)
+    private Instant timeStamp;
+
+    public AuditEvent() {
+    }
+
+    public AuditEvent(AuditEventType type, String username, String actor, String detail) {
+        this.type = type;
+        this.username = username;
+        this.actor = actor;
+        this.detail = detail;
+        this.timeStamp = Instant.now();
+    }
+
+    public AuditEventType getType() {
+        return type;
+    }
+
+    public void setType(AuditEventType type) {
+        this.type = type;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public void setActor(String actor) {
+        this.actor = actor;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public void setDetail(String detail) {
+        this.detail = detail;
+    }
+
+    public Instant getTimeStamp() {
+        return timeStamp;
+    }
+
+    public void setTimeStamp(Instant timeStamp) {
+        this.timeStamp = timeStamp;
+    }
+}
@@ -0,0 +1,83 @@
+package com.magadiflo.app.domain;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Respuesta de /user/image/sprite: las miniaturas de varios usuarios en una sola imagen PNG.
+ * <p>
+ * offsets: username -> [x, y], esquina superior izquierda de su miniatura (de tileSize x tileSize)
+ * dentro de la imagen, en el mismo orden en que se solicitaron.
+ * missing: usernames sin imagen de perfil propia (o inválidos), su lugar en la imagen queda transparente y el
+ * cliente puede usar el profileImageUrl del usuario.
+ * image: el PNG, en JSON se serializa en Base64 (data:image/png;base64,...) y en CBOR/Smile como binario.
+ */
+public class AvatarSprite {
+
+    private int tileSize;
+    private int width;
+    private int height;
+    private Map<String, int[]> offsets;
+    private List<String> missing;
+    private byte[] image;
+
+    public AvatarSprite() {
+    }
+
+    public AvatarSprite(int tileSize, int width, int height, Map<String, int[]> offsets, List<String> missing, byte[] image) {
+        this.tileSize = tileSize;
+        this.width = width;
+        this.height = height;
+        this.offsets = offsets;
+        this.missing = missing;
+        this.image = image;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public Map<String, int[]> getOffsets() {
+        return offsets;
+    }
+
+    public void setOffsets(Map<String, int[]> offsets) {
+        this.offsets = offsets;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+
+    public void setMissing(List<String> missing) {
+        this.missing = missing;
+    }
+
+    public byte[] getImage() {
+        return image;
+    }
+
+    public void setImage(byte[] image) {
+        this.image = image;
+    }
+}
@@ -3,7 +3,7 @@ package com.magadiflo.app.domain;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import org.springframework.http.HttpStatus;
 
-import java.util.Date;
+import java.time.Instant;
 /**
  * La respuesta que enviemos al cliente
  * incluirá esta clase. Esto con la
@@ -18,13 +18,16 @@ import java.util.Date;
  */
 public class HttpResponse {
 
+    public static final String TIMESTAMP_PATTERN = "dd-MM-yyyy HH:mm:ss";
+    public static final String TIMESTAMP_TIMEZONE = "America/Lima";
+
     private int httpStatusCode; //200, 201, 400, 500
     private HttpStatus httpStatus; //OK
     private String reason; //OK
     private String message;//Your request was successful
 
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy HH:mm:ss", timezone = "America/Lima")
-    private Date timeStamp;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = TIMESTAMP_PATTERN, timezone = TIMESTAMP_TIMEZONE)
+    private Instant timeStamp;
 
     public HttpResponse() {
     }
@@ -34,7 +37,7 @@ public class HttpResponse {
         this.httpStatus = httpStatus;
         this.reason = reason;
         this.message = message;
-        this.timeStamp = new Date();
+        this.timeStamp = Instant.now();
     }
 
     public int getHttpStatusCode() {
@@ -69,11 +72,11 @@ public class HttpResponse {
         this.message = message;
     }
 
-    public Date getTimeStamp() {
+    public Instant getTimeStamp() {
         return timeStamp;
     }
 
-    public void setTimeStamp(Date timeStamp) {
+    public void setTimeStamp(Instant timeStamp) {
         this.timeStamp = timeStamp;
     }
 }
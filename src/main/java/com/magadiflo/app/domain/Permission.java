@@ -0,0 +1,46 @@
+package com.magadiflo.app.domain;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Permiso que se le puede asignar a un rol (ejm. user:read, user:delete).
+ * Reemplaza a los String[] que se guardaban serializados en cada usuario.
+ */
+@Entity
+@Table(name = "permissions")
+public class Permission implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(nullable = false, updatable = false)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String name;
+
+    public Permission() {
+    }
+
+    public Permission(String name) {
+        this.name = name;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,29 @@
+package com.magadiflo.app.domain;
+
+import com.magadiflo.app.enumeration.UserPermission;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+/**
+ * Usuario autenticado con un JWT. Además de los authorities (para Spring Security),
+ * guarda los permisos como máscara de bits (ver UserPermission).
+ */
+public class PermissionAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long permissionMask;
+
+    public PermissionAuthenticationToken(String username, long permissionMask) {
+        super(username, null, UserPermission.toGrantedAuthorities(permissionMask));
+        this.permissionMask = permissionMask;
+    }
+
+    public long getPermissionMask() {
+        return this.permissionMask;
+    }
+
+    public boolean hasPermissions(long requiredMask) {
+        return (this.permissionMask & requiredMask) == requiredMask;
+    }
+
+}
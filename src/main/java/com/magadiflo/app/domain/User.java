@@ -1,17 +1,35 @@
 package com.magadiflo.app.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 import java.io.Serializable;
-import java.util.Date;
-
+import java.time.Instant;
+
+/**
+ * DynamicUpdate, el UPDATE generado solo incluye las columnas que cambiaron
+ * (ejm. un PATCH que solo cambia el email no reescribe el resto de columnas)
+ * <p>
+ * Where, los usuarios eliminados (deleted = true) se excluyen de todas las consultas a la entidad
+ * (repositorios, JPQL y Criteria). Solo las consultas nativas del UserPurgeService los ven.
+ */
 @Entity
 @Table(name = "users")
+@DynamicUpdate
+@Where(clause = "deleted = 0")
 public class User implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    public static final String ID_GENERATOR = "users_id_generator";
+    public static final String ID_SEQUENCE = "users_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     /**
      * JsonProperty.Access.WRITE_ONLY
      * Configuración de acceso que significa que la propiedad solo se puede escribir (establecer) para la deserialización,
@@ -20,11 +38,25 @@ public class User implements Serializable {
      * usando los DTO (en este proyecto no se han visto)
      */
 
+    /**
+     * Los ids se reservan en bloques de ID_ALLOCATION_SIZE (optimizador pooled-lo): cada nodo
+     * actualiza la secuencia una sola vez por bloque y entrega los ids del bloque desde memoria.
+     * En MySQL la secuencia es la tabla users_seq, cuya actualización es atómica entre nodos.
+     * Al no depender del AUTO_INCREMENT, Hibernate puede agrupar los inserts en lotes (jdbc.batch_size).
+     * Ver UserSequenceMigration.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_GENERATOR)
+    @GenericGenerator(name = ID_GENERATOR, strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = ID_SEQUENCE),
+            @Parameter(name = "increment_size", value = "" + ID_ALLOCATION_SIZE),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     @Column(nullable = false, updatable = false)
     @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private Long id;
+
+    @Column(unique = true) //Ver IUserIdGenerator
     private String userId;
     private String firstName;
     private String lastName;
@@ -34,19 +66,57 @@ public class User implements Serializable {
     private String password;
     private String email;
     private String profileImageUrl;
-    private Date lastLoginDate;
-    private Date lastLoginDateDisplay;
-    private Date joinDate;
+    private Instant lastLoginDate;
+    private Instant lastLoginDateDisplay;
+    private Instant joinDate;
     private String role; //ROLE_USER{ read, edit }, ROLE_ADMIN{ delete }
+
+    /**
+     * No se guarda en la tabla users, los permisos se obtienen del rol
+     * (tablas roles, permissions y role_permissions) mediante el PermissionResolver
+     */
+    @Transient
     private String[] authorities;
     private boolean isActive;
     private boolean isNotLocked;
 
+    /**
+     * Solo si la cuenta está bloqueada (isNotLocked = false): hasta cuándo. Los bloqueos por
+     * exceder los intentos de login vencen y los desbloquea el LoginAttemptService.
+     * null = bloqueo indefinido (lo hizo un administrador), solo se desbloquea manualmente.
+     */
+    private Instant lockedUntil;
+
+    /**
+     * El correo con el password generado (importación masiva) aún no se envió: se guarda en true al
+     * importar y se cambia a false cuando el EmailService lo envía. Si el envío falla, no se pudo encolar
+     * o la aplicación se reinicia antes de enviarlo, queda en true y un administrador debe usar reset-password
+     * (estos usuarios se listan con /user/list?passwordResetRequired=true).
+     */
+    private boolean passwordResetRequired;
+
+    /**
+     * Eliminación lógica: la petición solo marca al usuario, luego el UserPurgeService
+     * elimina la fila y sus archivos en segundo plano
+     */
+    @JsonIgnore
+    private boolean deleted;
+    @JsonIgnore
+    private Instant deletedDate;
+
+    /**
+     * Control de concurrencia optimista: cada UPDATE incluye "WHERE version = ?" y la incrementa.
+     * Si otra petición modificó al usuario después de leerlo, el UPDATE no afecta filas y
+     * se lanza una ObjectOptimisticLockingFailureException. También se usa como ETag.
+     */
+    @Version
+    private long version;
+
     public User() {
     }
 
     public User(Long id, String userId, String firstName, String lastName, String username, String password,
-                String email, String profileImageUrl, Date lastLoginDate, Date lastLoginDateDisplay, Date joinDate,
+                String email, String profileImageUrl, Instant lastLoginDate, Instant lastLoginDateDisplay, Instant joinDate,
                 String role, String[] authorities, boolean isActive, boolean isNotLocked) {
         this.id = id;
         this.userId = userId;
@@ -129,27 +199,27 @@ public class User implements Serializable {
         this.profileImageUrl = profileImageUrl;
     }
 
-    public Date getLastLoginDate() {
+    public Instant getLastLoginDate() {
         return lastLoginDate;
     }
 
-    public void setLastLoginDate(Date lastLoginDate) {
+    public void setLastLoginDate(Instant lastLoginDate) {
         this.lastLoginDate = lastLoginDate;
     }
 
-    public Date getLastLoginDateDisplay() {
+    public Instant getLastLoginDateDisplay() {
         return lastLoginDateDisplay;
     }
 
-    public void setLastLoginDateDisplay(Date lastLoginDateDisplay) {
+    public void setLastLoginDateDisplay(Instant lastLoginDateDisplay) {
         this.lastLoginDateDisplay = lastLoginDateDisplay;
     }
 
-    public Date getJoinDate() {
+    public Instant getJoinDate() {
         return joinDate;
     }
 
-    public void setJoinDate(Date joinDate) {
+    public void setJoinDate(Instant joinDate) {
         this.joinDate = joinDate;
     }
 
@@ -184,4 +254,44 @@ public class User implements Serializable {
     public void setNotLocked(boolean notLocked) {
         isNotLocked = notLocked;
     }
+
+    public Instant getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public void setLockedUntil(Instant lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+
+    public boolean isPasswordResetRequired() {
+        return passwordResetRequired;
+    }
+
+    public void setPasswordResetRequired(boolean passwordResetRequired) {
+        this.passwordResetRequired = passwordResetRequired;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public Instant getDeletedDate() {
+        return deletedDate;
+    }
+
+    public void setDeletedDate(Instant deletedDate) {
+        this.deletedDate = deletedDate;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
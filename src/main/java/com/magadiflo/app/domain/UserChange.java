@@ -0,0 +1,90 @@
+package com.magadiflo.app.domain;
+
+import com.magadiflo.app.enumeration.UserChangeType;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Un cambio de un usuario (fila de user_changes). La versión es un AUTO_INCREMENT, por lo que crece
+ * con cada cambio y los clientes la usan para pedir solo lo que cambió (/user/changes?since=).
+ * <p>
+ * Se identifica al usuario por userId, que no cambia aunque se cambie el username.
+ * El índice de changed_date es para eliminar los cambios antiguos (ver UserChangeFeed.prune).
+ */
+@Entity
+@Table(name = "user_changes", indexes = @Index(name = "idx_user_changes_changed_date", columnList = "changedDate"))
+public class UserChange implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(nullable = false, updatable = false)
+    private Long version;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, updatable = false, length = 32)
+    private UserChangeType type;
+
+    @Column(updatable = false)
+    private String userId;
+
+    @Column(updatable = false)
+    private String username;
+
+    @Column(nullable = false, updatable = false)
+    private Instant changedDate;
+
+    public UserChange() {
+    }
+
+    public UserChange(UserChangeType type, String userId, String username) {
+        this.type = type;
+        this.userId = userId;
+        this.username = username;
+        this.changedDate = Instant.now();
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public UserChangeType getType() {
+        return type;
+    }
+
+    public void setType(UserChangeType type) {
+        this.type = type;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public Instant getChangedDate() {
+        return changedDate;
+    }
+
+    public void setChangedDate(Instant changedDate) {
+        this.changedDate = changedDate;
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.magadiflo.app.domain;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Respuesta de /user/changes?since=
+ * <p>
+ * changes: cambios con versión mayor a since, en orden de versión.
+ * users: estado actual de los usuarios que cambiaron (userId -> usuario), null si el usuario fue eliminado.
+ * Si un usuario cambió varias veces solo aparece una vez, con su último estado.
+ * nextSince: valor de since para la siguiente petición.
+ * hasMore: hay más cambios, se deben pedir de inmediato con nextSince.
+ * resyncRequired: los cambios posteriores a since ya se eliminaron, el cliente debe volver a
+ * descargar todos los usuarios (/user/list) y continuar desde nextSince.
+ */
+public class UserChangeSet {
+
+    private List<UserChange> changes;
+    private Map<String, Map<String, Object>> users;
+    private long nextSince;
+    private boolean hasMore;
+    private boolean resyncRequired;
+
+    public UserChangeSet() {
+    }
+
+    public UserChangeSet(List<UserChange> changes, Map<String, Map<String, Object>> users, long nextSince,
+                         boolean hasMore, boolean resyncRequired) {
+        this.changes = changes;
+        this.users = users;
+        this.nextSince = nextSince;
+        this.hasMore = hasMore;
+        this.resyncRequired = resyncRequired;
+    }
+
+    public List<UserChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<UserChange> changes) {
+        this.changes = changes;
+    }
+
+    public Map<String, Map<String, Object>> getUsers() {
+        return users;
+    }
+
+    public void setUsers(Map<String, Map<String, Object>> users) {
+        this.users = users;
+    }
+
+    public long getNextSince() {
+        return nextSince;
+    }
+
+    public void setNextSince(long nextSince) {
+        this.nextSince = nextSince;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    public void setResyncRequired(boolean resyncRequired) {
+        this.resyncRequired = resyncRequired;
+    }
+
+}
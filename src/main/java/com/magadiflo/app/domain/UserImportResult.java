@@ -0,0 +1,51 @@
+package com.magadiflo.app.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resumen de una importación masiva. Solo se guardan los primeros
+ * MAXIMUM_ERRORS errores para no devolver respuestas enormes.
+ * emailsNotQueued: usuarios importados cuyo correo con el password no se pudo encolar,
+ * quedan con passwordResetRequired = true (ver /user/list?passwordResetRequired=true).
+ */
+public class UserImportResult {
+
+    private static final int MAXIMUM_ERRORS = 100;
+
+    private int imported;
+    private int skipped;
+    private int emailsNotQueued;
+    private final List<String> errors = new ArrayList<>();
+
+    public void addImported(int count) {
+        this.imported += count;
+    }
+
+    public void addSkipped(long line, String reason) {
+        this.skipped++;
+        if (this.errors.size() < MAXIMUM_ERRORS) {
+            this.errors.add("Line " + line + ": " + reason);
+        }
+    }
+
+    public void addEmailNotQueued() {
+        this.emailsNotQueued++;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public int getEmailsNotQueued() {
+        return emailsNotQueued;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
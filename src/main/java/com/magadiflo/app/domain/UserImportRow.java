@@ -0,0 +1,71 @@
+package com.magadiflo.app.domain;
+
+/**
+ * Fila del archivo de importación masiva (una línea del CSV o del NDJSON)
+ */
+public class UserImportRow {
+
+    private String firstName;
+    private String lastName;
+    private String username;
+    private String email;
+    private String role;
+    private boolean active = true;
+    private boolean notLocked = true;
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public boolean isNotLocked() {
+        return notLocked;
+    }
+
+    public void setNotLocked(boolean notLocked) {
+        this.notLocked = notLocked;
+    }
+}
@@ -26,9 +26,12 @@ import java.util.stream.Collectors;
 public class UserPrincipal implements UserDetails {
 
     private final User USER;
+    private final long PERMISSION_MASK;
 
-    public UserPrincipal(User user) {
+    //permissionMask, la del rol del usuario (ver PermissionResolver.getPermissionMask)
+    public UserPrincipal(User user, long permissionMask) {
         this.USER = user;
+        this.PERMISSION_MASK = permissionMask;
     }
 
     /**
@@ -41,6 +44,11 @@ public class UserPrincipal implements UserDetails {
         return Arrays.stream(this.USER.getAuthorities()).map(SimpleGrantedAuthority::new).collect(Collectors.toList());
     }
 
+    //Permisos del usuario como máscara de bits, es lo que se guarda en el token
+    public long getPermissionMask() {
+        return this.PERMISSION_MASK;
+    }
+
     @Override
     public String getPassword() {
         return this.USER.getPassword();
@@ -0,0 +1,75 @@
+package com.magadiflo.app.domain;
+
+/**
+ * Usuario encontrado por la búsqueda. Los valores se leen directamente
+ * del índice de búsqueda, sin consultar la BD.
+ */
+public class UserSearchHit {
+
+    private String username;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String profileImageUrl;
+    private float score; //Relevancia, a mayor valor más parecido a lo buscado
+
+    public UserSearchHit() {
+    }
+
+    public UserSearchHit(String username, String firstName, String lastName, String email, String profileImageUrl, float score) {
+        this.username = username;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.profileImageUrl = profileImageUrl;
+        this.score = score;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getProfileImageUrl() {
+        return profileImageUrl;
+    }
+
+    public void setProfileImageUrl(String profileImageUrl) {
+        this.profileImageUrl = profileImageUrl;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public void setScore(float score) {
+        this.score = score;
+    }
+}
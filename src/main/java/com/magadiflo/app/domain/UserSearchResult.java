@@ -0,0 +1,66 @@
+package com.magadiflo.app.domain;
+
+import java.util.List;
+
+/**
+ * Página de resultados de /user/search, ordenados por relevancia
+ */
+public class UserSearchResult {
+
+    private String query;
+    private int page;
+    private int size;
+    private long totalHits;
+    private List<UserSearchHit> hits;
+
+    public UserSearchResult() {
+    }
+
+    public UserSearchResult(String query, int page, int size, long totalHits, List<UserSearchHit> hits) {
+        this.query = query;
+        this.page = page;
+        this.size = size;
+        this.totalHits = totalHits;
+        this.hits = hits;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public void setTotalHits(long totalHits) {
+        this.totalHits = totalHits;
+    }
+
+    public List<UserSearchHit> getHits() {
+        return hits;
+    }
+
+    public void setHits(List<UserSearchHit> hits) {
+        this.hits = hits;
+    }
+}
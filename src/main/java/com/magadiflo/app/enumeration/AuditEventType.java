@@ -0,0 +1,16 @@
+package com.magadiflo.app.enumeration;
+
+public enum AuditEventType {
+
+    LOGIN_SUCCESS,
+    LOGIN_FAILURE,
+    ACCOUNT_LOCKED,
+    ACCOUNT_UNLOCKED,
+    PASSWORD_RESET,
+    USER_REGISTERED,
+    USER_ADDED,
+    USER_UPDATED,
+    USER_DELETED,
+    PROFILE_IMAGE_UPDATED
+
+}
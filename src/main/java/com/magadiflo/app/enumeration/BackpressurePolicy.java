@@ -0,0 +1,13 @@
+package com.magadiflo.app.enumeration;
+
+/**
+ * Qué hacer cuando el buffer de eventos de auditoría está lleno
+ * (el escritor no alcanza a persistir los eventos al ritmo en que llegan).
+ */
+public enum BackpressurePolicy {
+
+    DROP_NEWEST, //Se descarta el evento que se intenta publicar
+    DROP_OLDEST, //Se descarta el evento más antiguo del buffer para hacer espacio al nuevo
+    BLOCK //El hilo que publica espera como máximo audit.block-timeout-ms, luego se descarta el evento
+
+}
@@ -0,0 +1,41 @@
+package com.magadiflo.app.enumeration;
+
+/**
+ * Límites de peticiones (token bucket). Cada bucket admite ráfagas de hasta capacity
+ * peticiones y recupera refillTokens cada refillPeriodSeconds.
+ * <p>
+ * PER_IP: un bucket por cada IP. PER_USERNAME / PER_EMAIL: un bucket por cada valor,
+ * sin importar desde qué IP llegue. GLOBAL: un solo bucket para todo el endpoint.
+ * <p>
+ * IMAGE_PER_IP es alto porque la vista de administración pide una imagen por cada fila de /user/list
+ * (cientos por página) y varios usuarios pueden compartir la IP de un NAT.
+ */
+public enum RateLimit {
+
+    LOGIN_PER_IP(10, 10, 60),
+    LOGIN_PER_USERNAME(5, 5, 300),
+    LOGIN_GLOBAL(200, 200, 1),
+    REGISTER_PER_IP(5, 5, 600),
+    REGISTER_GLOBAL(20, 20, 1),
+    PASSWORD_RESET_PER_IP(5, 5, 600),
+    PASSWORD_RESET_PER_EMAIL(3, 3, 3600),
+    PASSWORD_RESET_GLOBAL(10, 10, 1),
+    IMAGE_PER_IP(1000, 1000, 60);
+
+    private final int capacity;
+    private final double tokensPerNano;
+
+    RateLimit(int capacity, int refillTokens, int refillPeriodSeconds) {
+        this.capacity = capacity;
+        this.tokensPerNano = refillTokens / (refillPeriodSeconds * 1_000_000_000d);
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public double getTokensPerNano() {
+        return this.tokensPerNano;
+    }
+
+}
@@ -1,7 +1,15 @@
 package com.magadiflo.app.enumeration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static  com.magadiflo.app.constant.Authority.*;
 
+/**
+ * Roles por defecto. Los permisos definidos aquí solo se usan para crear
+ * los roles en la BD si aún no existen (ver AuthoritiesMigration), luego
+ * los permisos se leen de la BD con el PermissionResolver.
+ */
 public enum Role {
 
     ROLE_USER(USER_AUTHORITIES),
@@ -10,6 +18,14 @@ public enum Role {
     ROLE_ADMIN(ADMIN_AUTHORITIES),
     ROLE_SUPER_ADMIN(SUPER_ADMIN_AUTHORITIES);
 
+    private static final Map<String, Role> BY_NAME = new HashMap<>();
+
+    static {
+        for (Role role : values()) {
+            BY_NAME.put(role.name(), role);
+        }
+    }
+
     private final String[] authorities;
 
     Role(String... authorities){
@@ -19,4 +35,20 @@ public enum Role {
     public String[] getAuthorities() {
         return this.authorities;
     }
+
+    /**
+     * Igual que valueOf(name.toUpperCase()), pero solo convierte a mayúsculas si el nombre
+     * no se encuentra tal cual (el caso normal, ya que los roles se guardan en mayúsculas).
+     * Lanza IllegalArgumentException si el rol no existe.
+     */
+    public static Role fromName(String name) {
+        Role role = BY_NAME.get(name);
+        if (role == null) {
+            role = BY_NAME.get(name.toUpperCase());
+        }
+        if (role == null) {
+            throw new IllegalArgumentException("No role " + name);
+        }
+        return role;
+    }
 }
@@ -0,0 +1,17 @@
+package com.magadiflo.app.enumeration;
+
+/**
+ * Tipo de cambio registrado en la tabla user_changes (ver UserChangeFeed)
+ */
+public enum UserChangeType {
+
+    CREATED,
+    UPDATED,
+    DELETED,
+    LOCKED,
+    UNLOCKED,
+    PROFILE_IMAGE_UPDATED,
+    //Versión de una transacción revertida, la inserta UserChangeFeed para cerrar el hueco (no se envía a los clientes)
+    SKIPPED
+
+}
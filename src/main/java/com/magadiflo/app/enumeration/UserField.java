@@ -0,0 +1,99 @@
+package com.magadiflo.app.enumeration;
+
+import com.magadiflo.app.exception.domain.InvalidFieldException;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Campos del usuario que se pueden solicitar en las consultas de lectura
+ * (parámetro fields, ejm. /user/list?fields=username,email).
+ * <p>
+ * jsonName: nombre de la propiedad en el JSON, el mismo que se obtenía al serializar User.
+ * attribute: nombre del atributo en la entidad User, null si el valor no es una columna
+ * (authorities se obtiene del rol con el PermissionResolver).
+ * <p>
+ * El id y el password no están aquí, por lo que nunca se consultan.
+ */
+public enum UserField {
+
+    USER_ID("userId", "userId"),
+    FIRST_NAME("firstName", "firstName"),
+    LAST_NAME("lastName", "lastName"),
+    USERNAME("username", "username"),
+    EMAIL("email", "email"),
+    PROFILE_IMAGE_URL("profileImageUrl", "profileImageUrl"),
+    LAST_LOGIN_DATE("lastLoginDate", "lastLoginDate"),
+    LAST_LOGIN_DATE_DISPLAY("lastLoginDateDisplay", "lastLoginDateDisplay"),
+    JOIN_DATE("joinDate", "joinDate"),
+    ROLE("role", "role"),
+    AUTHORITIES("authorities", null),
+    ACTIVE("active", "isActive"),
+    NOT_LOCKED("notLocked", "isNotLocked"),
+    VERSION("version", "version"),
+    LOCKED_UNTIL("lockedUntil", "lockedUntil"),
+    PASSWORD_RESET_REQUIRED("passwordResetRequired", "passwordResetRequired");
+
+    private static final Map<String, UserField> BY_JSON_NAME = new HashMap<>();
+
+    static {
+        for (UserField field : values()) {
+            BY_JSON_NAME.put(field.jsonName, field);
+        }
+    }
+
+    private final String jsonName;
+    private final String attribute;
+
+    UserField(String jsonName, String attribute) {
+        this.jsonName = jsonName;
+        this.attribute = attribute;
+    }
+
+    public String getJsonName() {
+        return this.jsonName;
+    }
+
+    public String getAttribute() {
+        return this.attribute;
+    }
+
+    public boolean isColumn() {
+        return this.attribute != null;
+    }
+
+    //Devuelve null si no existe un campo con ese nombre
+    public static UserField fromJsonName(String jsonName) {
+        return BY_JSON_NAME.get(jsonName);
+    }
+
+    /**
+     * Convierte el parámetro fields (separado por comas) en los campos a consultar.
+     * Si no se envía, se devuelven todos los campos.
+     */
+    public static Set<UserField> parse(String fields) throws InvalidFieldException {
+        if (StringUtils.isBlank(fields)) {
+            return Collections.unmodifiableSet(EnumSet.allOf(UserField.class));
+        }
+        Set<UserField> result = EnumSet.noneOf(UserField.class);
+        for (String name : fields.split(",")) {
+            if (name.trim().isEmpty()) {
+                continue;
+            }
+            UserField field = BY_JSON_NAME.get(name.trim());
+            if (field == null) {
+                throw new InvalidFieldException("Unknown user field: ".concat(name.trim()));
+            }
+            result.add(field);
+        }
+        if (result.isEmpty()) {
+            throw new InvalidFieldException("At least one user field is required");
+        }
+        return result;
+    }
+
+}
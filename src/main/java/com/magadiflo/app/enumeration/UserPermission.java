@@ -0,0 +1,94 @@
+package com.magadiflo.app.enumeration;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Permisos conocidos por la aplicación. Cada permiso es un bit (mask) de un long, así
+ * los permisos de un rol o de un token se representan con un solo número y verificar
+ * un permiso es un AND, sin comparar cadenas.
+ * <p>
+ * IMPORTANTE: el bit de cada permiso es su posición en este enum y viaja en los tokens
+ * (claim perms), por eso los permisos nuevos se agregan siempre al final.
+ */
+public enum UserPermission {
+
+    USER_READ("user:read"),
+    USER_CREATE("user:create"),
+    USER_UPDATE("user:update"),
+    USER_DELETE("user:delete");
+
+    private static final Map<String, UserPermission> BY_AUTHORITY = new HashMap<>();
+    //Authorities (Spring Security) por cada máscara; en la práctica hay una máscara distinta por rol
+    private static final Map<Long, List<GrantedAuthority>> GRANTED_AUTHORITIES = new ConcurrentHashMap<>();
+
+    static {
+        for (UserPermission permission : values()) {
+            BY_AUTHORITY.put(permission.authority, permission);
+        }
+    }
+
+    private final String authority;
+    private final long mask;
+
+    UserPermission(String authority) {
+        this.authority = authority;
+        this.mask = 1L << this.ordinal();
+    }
+
+    public String getAuthority() {
+        return this.authority;
+    }
+
+    public long getMask() {
+        return this.mask;
+    }
+
+    //Devuelve null si el authority no es un permiso conocido
+    public static UserPermission fromAuthority(String authority) {
+        return BY_AUTHORITY.get(authority);
+    }
+
+    //Los authorities que no son permisos conocidos se ignoran
+    public static long toMask(String... authorities) {
+        long mask = 0;
+        for (String authority : authorities) {
+            UserPermission permission = BY_AUTHORITY.get(authority);
+            if (permission != null) {
+                mask |= permission.mask;
+            }
+        }
+        return mask;
+    }
+
+    public static long toMask(UserPermission... permissions) {
+        long mask = 0;
+        for (UserPermission permission : permissions) {
+            mask |= permission.mask;
+        }
+        return mask;
+    }
+
+    /**
+     * La lista devuelta es inmutable y compartida por todos los tokens con la misma máscara
+     */
+    public static List<GrantedAuthority> toGrantedAuthorities(long mask) {
+        return GRANTED_AUTHORITIES.computeIfAbsent(mask, key -> {
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            for (UserPermission permission : values()) {
+                if ((key & permission.mask) != 0) {
+                    authorities.add(new SimpleGrantedAuthority(permission.authority));
+                }
+            }
+            return Collections.unmodifiableList(authorities);
+        });
+    }
+
+}
@@ -1,14 +1,17 @@
 package com.magadiflo.app.exception;
 
 import com.auth0.jwt.exceptions.TokenExpiredException;
-import com.magadiflo.app.domain.HttpResponse;
+import com.magadiflo.app.constant.UserImplConstant;
 import com.magadiflo.app.exception.domain.*;
+import com.magadiflo.app.utility.HttpResponseWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.web.servlet.error.ErrorController;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.DisabledException;
@@ -17,7 +20,9 @@ import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
+import javax.annotation.PostConstruct;
 import javax.persistence.NoResultException;
 import java.io.IOException;
 import java.util.Objects;
@@ -52,13 +57,17 @@ import java.util.Objects;
  * Esto provocaba que no se muestre nuestro método handler personalizado.
  * Para solucionarlo se agregó el "/" al request mapping quedando:
  *      @RequestMapping(path = {"/", "/users"})
+ * <p>
+ * Las respuestas con mensajes fijos (credenciales incorrectas, cuenta bloqueada, etc.)
+ * se serializan una sola vez al crear el bean (ver HttpResponseWriter), ya que durante
+ * un ataque de fuerza bruta son la mayoría de las respuestas.
  */
 
 @RestControllerAdvice
 public class ExceptionHandling implements ErrorController {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
-    private static final String ACCOUNT_LOCKED = "Your account has been locked. Please contact administration";
+    protected static final String ACCOUNT_LOCKED = "Your account has been locked. Please contact administration";
     private static final String METHOD_IS_NOT_ALLOWED = "This request method is not allowed on this endpoint. Please send a '%s' request";
     private static final String INTERNAL_SERVER_ERROR_MSG = "An error occurred while processing the request";
     private static final String INCORRECT_CREDENTIALS = "Username / password incorrect. Please try again";
@@ -66,10 +75,31 @@ public class ExceptionHandling implements ErrorController {
     private static final String ERROR_PROCESSING_FILE = "Error occurred while processing file";
     private static final String NOT_ENOUGH_PERMISSION = "You do not have enough permission";
     public static final String ERROR_PATH = "/error";
+    private static final String NO_MAPPING_FOR_URL = "There is no mapping for this URL";
+    private static final String FILE_TOO_LARGE = "The file exceeds the maximum upload size";
+
+    private final HttpResponseWriter httpResponseWriter;
+
+    public ExceptionHandling(HttpResponseWriter httpResponseWriter) {
+        this.httpResponseWriter = httpResponseWriter;
+    }
+
+    @PostConstruct
+    public void prerenderResponses() {
+        this.httpResponseWriter.prerender(HttpStatus.NOT_FOUND, NO_MAPPING_FOR_URL);
+        this.httpResponseWriter.prerender(HttpStatus.BAD_REQUEST, ACCOUNT_DISABLED);
+        this.httpResponseWriter.prerender(HttpStatus.BAD_REQUEST, INCORRECT_CREDENTIALS);
+        this.httpResponseWriter.prerender(HttpStatus.FORBIDDEN, NOT_ENOUGH_PERMISSION);
+        this.httpResponseWriter.prerender(HttpStatus.UNAUTHORIZED, ACCOUNT_LOCKED);
+        this.httpResponseWriter.prerender(HttpStatus.CONFLICT, UserImplConstant.USER_MODIFIED_BY_ANOTHER_REQUEST);
+        this.httpResponseWriter.prerender(HttpStatus.PAYLOAD_TOO_LARGE, FILE_TOO_LARGE);
+        this.httpResponseWriter.prerender(HttpStatus.INTERNAL_SERVER_ERROR, ERROR_PROCESSING_FILE);
+        this.httpResponseWriter.prerender(HttpStatus.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MSG);
+    }
 
     @RequestMapping(ERROR_PATH)
-    public ResponseEntity<HttpResponse> notFound404() {
-        return this.createHttpResponse(HttpStatus.NOT_FOUND, "There is no mapping for this URL");
+    public ResponseEntity<byte[]> notFound404() {
+        return this.createHttpResponse(HttpStatus.NOT_FOUND, NO_MAPPING_FOR_URL);
     }
 
     /**
@@ -77,7 +107,7 @@ public class ExceptionHandling implements ErrorController {
      * tener toda la información de la excepción generada.
      * Ejemplo:
      * @ExceptionHandler(DisabledException.class)
-     * public ResponseEntity<HttpResponse> accountDisabledException(DisabledException e) {
+     * public ResponseEntity<byte[]> accountDisabledException(DisabledException e) {
      * .....
      */
 
@@ -89,70 +119,111 @@ public class ExceptionHandling implements ErrorController {
      * se disparará
      */
     @ExceptionHandler(DisabledException.class)
-    public ResponseEntity<HttpResponse> accountDisabledException() {
+    public ResponseEntity<byte[]> accountDisabledException() {
         return this.createHttpResponse(HttpStatus.BAD_REQUEST, ACCOUNT_DISABLED);
     }
 
     @ExceptionHandler(BadCredentialsException.class)
-    public ResponseEntity<HttpResponse> badCredentialsException() {
+    public ResponseEntity<byte[]> badCredentialsException() {
         return this.createHttpResponse(HttpStatus.BAD_REQUEST, INCORRECT_CREDENTIALS);
     }
 
     @ExceptionHandler(AccessDeniedException.class)
-    public ResponseEntity<HttpResponse> accessDeniedException() {
+    public ResponseEntity<byte[]> accessDeniedException() {
         return this.createHttpResponse(HttpStatus.FORBIDDEN, NOT_ENOUGH_PERMISSION);
     }
 
     @ExceptionHandler(LockedException.class)
-    public ResponseEntity<HttpResponse> lockedException() {
+    public ResponseEntity<byte[]> lockedException() {
         return this.createHttpResponse(HttpStatus.UNAUTHORIZED, ACCOUNT_LOCKED);
     }
 
     @ExceptionHandler(TokenExpiredException.class)
-    public ResponseEntity<HttpResponse> tokenExpiredException(TokenExpiredException e) {
+    public ResponseEntity<byte[]> tokenExpiredException(TokenExpiredException e) {
         return this.createHttpResponse(HttpStatus.UNAUTHORIZED, e.getMessage());
     }
 
     @ExceptionHandler(EmailExistException.class)
-    public ResponseEntity<HttpResponse> emailExistException(EmailExistException e) {
+    public ResponseEntity<byte[]> emailExistException(EmailExistException e) {
         return this.createHttpResponse(HttpStatus.BAD_REQUEST, e.getMessage());
     }
 
     @ExceptionHandler(UsernameExistException.class)
-    public ResponseEntity<HttpResponse> UsernameExistException(UsernameExistException e) {
+    public ResponseEntity<byte[]> UsernameExistException(UsernameExistException e) {
         return this.createHttpResponse(HttpStatus.BAD_REQUEST, e.getMessage());
     }
 
     @ExceptionHandler(EmailNotFoundException.class)
-    public ResponseEntity<HttpResponse> emailNotFoundException(EmailNotFoundException e) {
+    public ResponseEntity<byte[]> emailNotFoundException(EmailNotFoundException e) {
         return this.createHttpResponse(HttpStatus.BAD_REQUEST, e.getMessage());
     }
 
     @ExceptionHandler(UserNotFoundException.class)
-    public ResponseEntity<HttpResponse> userNotFoundException(UserNotFoundException e) {
+    public ResponseEntity<byte[]> userNotFoundException(UserNotFoundException e) {
         return this.createHttpResponse(HttpStatus.BAD_REQUEST, e.getMessage());
     }
 
+    @ExceptionHandler(InvalidFieldException.class)
+    public ResponseEntity<byte[]> invalidFieldException(InvalidFieldException e) {
+        return this.createHttpResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+
+    //Retry-After, segundos que el cliente debe esperar antes de reintentar
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<byte[]> rateLimitExceededException(RateLimitExceededException e) {
+        ResponseEntity<byte[]> response = this.createHttpResponse(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<byte[]> preconditionFailedException(PreconditionFailedException e) {
+        return this.createHttpResponse(HttpStatus.PRECONDITION_FAILED, e.getMessage());
+    }
+
+    /**
+     * ObjectOptimisticLockingFailureException, otra petición modificó la misma fila (@Version)
+     * entre la lectura y el UPDATE de esta petición
+     */
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<byte[]> optimisticLockingFailureException() {
+        return this.createHttpResponse(HttpStatus.CONFLICT, UserImplConstant.USER_MODIFIED_BY_ANOTHER_REQUEST);
+    }
+
     @ExceptionHandler(HttpRequestMethodNotSupportedException.class)
-    public ResponseEntity<HttpResponse> methodNotSupportedException(HttpRequestMethodNotSupportedException e) {
+    public ResponseEntity<byte[]> methodNotSupportedException(HttpRequestMethodNotSupportedException e) {
         HttpMethod supportedMethod = Objects.requireNonNull(e.getSupportedHttpMethods()).iterator().next();
         return this.createHttpResponse(HttpStatus.METHOD_NOT_ALLOWED, String.format(METHOD_IS_NOT_ALLOWED, supportedMethod));
     }
 
     @ExceptionHandler(NoResultException.class)
-    public ResponseEntity<HttpResponse> noResultException(NoResultException e) {
+    public ResponseEntity<byte[]> noResultException(NoResultException e) {
         this.logger.error(e.getMessage());
         return this.createHttpResponse(HttpStatus.NOT_FOUND, e.getMessage());
     }
 
     @ExceptionHandler(IOException.class)
-    public ResponseEntity<HttpResponse> iOException(IOException e) {
+    public ResponseEntity<byte[]> iOException(IOException e) {
         this.logger.error(e.getMessage());
         return this.createHttpResponse(HttpStatus.INTERNAL_SERVER_ERROR, ERROR_PROCESSING_FILE);
     }
 
+    //413, la imagen supera el tamaño o las dimensiones permitidas (ver ProfileImageStore)
+    @ExceptionHandler(ImageTooLargeException.class)
+    public ResponseEntity<byte[]> imageTooLargeException(ImageTooLargeException e) {
+        return this.createHttpResponse(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+    }
+
+    //El archivo supera spring.servlet.multipart.max-file-size, lo rechaza el MultipartResolver
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<byte[]> maxUploadSizeExceededException() {
+        return this.createHttpResponse(HttpStatus.PAYLOAD_TOO_LARGE, FILE_TOO_LARGE);
+    }
+
     @ExceptionHandler(NotAnImageFileException.class)
-    public ResponseEntity<HttpResponse> iOException(NotAnImageFileException e) {
+    public ResponseEntity<byte[]> iOException(NotAnImageFileException e) {
         this.logger.error(e.getMessage());
         return this.createHttpResponse(HttpStatus.BAD_REQUEST, e.getMessage());
     }
@@ -162,14 +233,14 @@ public class ExceptionHandling implements ErrorController {
      * este método que es una excepción general
      */
     @ExceptionHandler(Exception.class)
-    public ResponseEntity<HttpResponse> internalServerErrorException(Exception e) {
+    public ResponseEntity<byte[]> internalServerErrorException(Exception e) {
         this.logger.error(e.getMessage());
         return this.createHttpResponse(HttpStatus.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MSG);
     }
 
-    private ResponseEntity<HttpResponse> createHttpResponse(HttpStatus httpStatus, String message) {
-        HttpResponse httpResponse = new HttpResponse(httpStatus.value(), httpStatus, httpStatus.getReasonPhrase().toUpperCase(), message);
-        return new ResponseEntity<>(httpResponse, httpStatus);
+    //El cuerpo es un HttpResponse ya serializado a JSON
+    private ResponseEntity<byte[]> createHttpResponse(HttpStatus httpStatus, String message) {
+        return this.httpResponseWriter.toResponseEntity(httpStatus, message);
     }
 
 }
@@ -0,0 +1,7 @@
+package com.magadiflo.app.exception.domain;
+
+public class ImageTooLargeException extends Exception {
+    public ImageTooLargeException(String message) {
+        super(message);
+    }
+}
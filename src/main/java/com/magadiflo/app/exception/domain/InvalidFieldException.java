@@ -0,0 +1,9 @@
+package com.magadiflo.app.exception.domain;
+
+public class InvalidFieldException extends Exception {
+
+    public InvalidFieldException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.magadiflo.app.exception.domain;
+
+public class PreconditionFailedException extends Exception {
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+
+}
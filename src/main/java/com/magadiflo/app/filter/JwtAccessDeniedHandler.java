@@ -1,10 +1,8 @@
 package com.magadiflo.app.filter;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.magadiflo.app.constant.SecurityConstant;
-import com.magadiflo.app.domain.HttpResponse;
+import com.magadiflo.app.utility.HttpResponseWriter;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.web.access.AccessDeniedHandler;
 import org.springframework.stereotype.Component;
@@ -13,7 +11,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.OutputStream;
 
 /**
  * Esta clase enviará un acceso denegado al usuario si está
@@ -21,23 +18,25 @@ import java.io.OutputStream;
  * para acceder a él. Cada vez que eso suceda se activará una
  * clase de acceso denegado y esa clase tiene un método que
  * sobreescribiremos para enviar nuestro mensaje estándar.
+ * <p>
+ * El cuerpo de la respuesta se serializa una sola vez al crear el bean
+ * (ver HttpResponseWriter), en cada rechazo solo se agrega la fecha.
  */
 
 @Component
 public class JwtAccessDeniedHandler implements AccessDeniedHandler {
 
+    private final HttpResponseWriter httpResponseWriter;
+
+    public JwtAccessDeniedHandler(HttpResponseWriter httpResponseWriter) {
+        this.httpResponseWriter = httpResponseWriter;
+        this.httpResponseWriter.prerender(HttpStatus.UNAUTHORIZED, SecurityConstant.ACCESS_DENIED_MESSAGE);
+    }
+
     @Override
     public void handle(HttpServletRequest request, HttpServletResponse response, AccessDeniedException exception)
             throws IOException, ServletException {
-        HttpResponse httpResponse = new HttpResponse(HttpStatus.UNAUTHORIZED.value(), HttpStatus.UNAUTHORIZED,
-                HttpStatus.UNAUTHORIZED.getReasonPhrase().toUpperCase(), SecurityConstant.ACCESS_DENIED_MESSAGE);
-        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-        response.setStatus(HttpStatus.UNAUTHORIZED.value());
-
-        OutputStream outputStream = response.getOutputStream();
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.writeValue(outputStream, httpResponse);
-        outputStream.flush(); //Enviamos la respuesta al usuario
+        this.httpResponseWriter.write(response, HttpStatus.UNAUTHORIZED, SecurityConstant.ACCESS_DENIED_MESSAGE);
     }
 
 }
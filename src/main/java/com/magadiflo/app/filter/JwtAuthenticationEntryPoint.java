@@ -1,12 +1,10 @@
 package com.magadiflo.app.filter;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.magadiflo.app.constant.SecurityConstant;
-import com.magadiflo.app.domain.HttpResponse;
+import com.magadiflo.app.utility.HttpResponseWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.authentication.Http403ForbiddenEntryPoint;
 import org.springframework.stereotype.Component;
@@ -14,7 +12,6 @@ import org.springframework.stereotype.Component;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.OutputStream;
 
 /**
  * Cada vez que el usuario no esté autenticado e intente
@@ -23,6 +20,9 @@ import java.io.OutputStream;
  * que eso suceda, queremos tomar el control de lo que se devuelve al usuario.
  * Por lo tanto, sobreescribimos el método commence() de la clase Http403ForbiddenEntryPoint,
  * y personalizamos el mensaje de respuesta con nuestra clase personalizada (HttpResponse)
+ * <p>
+ * Durante un ataque de fuerza bruta la mayoría de peticiones terminan aquí, por eso
+ * el cuerpo de la respuesta se serializa una sola vez al crear el bean (ver HttpResponseWriter).
  */
 
 @Component
@@ -30,20 +30,18 @@ public class JwtAuthenticationEntryPoint extends Http403ForbiddenEntryPoint {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private final HttpResponseWriter httpResponseWriter;
+
+    public JwtAuthenticationEntryPoint(HttpResponseWriter httpResponseWriter) {
+        this.httpResponseWriter = httpResponseWriter;
+        this.httpResponseWriter.prerender(HttpStatus.FORBIDDEN, SecurityConstant.FORBIDDEN_MESSAGE);
+    }
+
     @Override
     public void commence(HttpServletRequest request, HttpServletResponse response, AuthenticationException exception)
             throws IOException {
 
-        this.logger.info("Llamando a un punto de entrada pre-autenticado. Rechazar el acceso: cod. 403");
-
-        HttpResponse httpResponse = new HttpResponse(HttpStatus.FORBIDDEN.value(), HttpStatus.FORBIDDEN,
-                HttpStatus.FORBIDDEN.getReasonPhrase().toUpperCase(), SecurityConstant.FORBIDDEN_MESSAGE);
-        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-        response.setStatus(HttpStatus.FORBIDDEN.value());
-
-        OutputStream outputStream = response.getOutputStream();
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.writeValue(outputStream, httpResponse);
-        outputStream.flush(); //Enviamos la respuesta al usuario
+        this.logger.debug("Llamando a un punto de entrada pre-autenticado. Rechazar el acceso: cod. 403");
+        this.httpResponseWriter.write(response, HttpStatus.FORBIDDEN, SecurityConstant.FORBIDDEN_MESSAGE);
     }
 }
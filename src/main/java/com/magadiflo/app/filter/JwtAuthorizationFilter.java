@@ -1,13 +1,14 @@
 package com.magadiflo.app.filter;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.magadiflo.app.constant.SecurityConstant;
 import com.magadiflo.app.utility.JWTTokenProvider;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import javax.servlet.FilterChain;
@@ -15,7 +16,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.List;
 
 @Component
 public class JwtAuthorizationFilter extends OncePerRequestFilter {
@@ -27,11 +27,34 @@ public class JwtAuthorizationFilter extends OncePerRequestFilter {
      * la documentación oficial es de hecho la de constructor.
      */
     private final JWTTokenProvider jwtTokenProvider;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
 
     public JwtAuthorizationFilter(JWTTokenProvider jwtTokenProvider) {
         this.jwtTokenProvider = jwtTokenProvider;
     }
 
+    /**
+     * Las peticiones OPTIONS (el preflight ya lo respondió el CorsFilter) y las de las
+     * PUBLIC_URLS no necesitan usuario autenticado, así que ni siquiera se lee el token
+     * (salvo AVATAR_SPRITE_URL, que sí lo requiere).
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (HttpMethod.OPTIONS.matches(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (this.pathMatcher.match(SecurityConstant.AVATAR_SPRITE_URL, path)) {
+            return false;
+        }
+        for (String publicUrl : SecurityConstant.PUBLIC_URLS) {
+            if (this.pathMatcher.match(publicUrl, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Este método se disparará cada vez que llegue una nueva solicitud,
      * y eso solo va a suceder una vez.
@@ -39,31 +62,25 @@ public class JwtAuthorizationFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        //Verificamos si el método es del tipo OPTIONS, ya que es enviada antes de cada solicitud
-        //y se envía para recopilar información sobre el servidor. Solamente respondemos con un status OK
-        if (request.getMethod().equalsIgnoreCase(SecurityConstant.OPTIONS_HTTP_METHOD)) {
-            response.setStatus(HttpStatus.OK.value());
+        String authorizationHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorizationHeader == null || !authorizationHeader.startsWith(SecurityConstant.TOKEN_PREFIX)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String token = authorizationHeader.substring(SecurityConstant.TOKEN_PREFIX.length());
+        DecodedJWT jwt = this.jwtTokenProvider.verify(token); //La firma se verifica una sola vez por petición
+        /**
+         * La verificación en el security context holder no es necesaria, ya que no estamos
+         * usando la sesión. Esta parte se puede quitar en la condición
+         */
+        if (this.jwtTokenProvider.isTokenValid(jwt) &&
+                SecurityContextHolder.getContext().getAuthentication() == null) {
+            long permissionMask = this.jwtTokenProvider.getPermissionMask(jwt);
+            Authentication authentication = this.jwtTokenProvider.getAuthentication(jwt.getSubject(), permissionMask, request);
+            //Configuramos al usuario como un usuario autenticado en el context security holder
+            SecurityContextHolder.getContext().setAuthentication(authentication);
         } else {
-            String authorizationHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
-            if (authorizationHeader == null || !authorizationHeader.startsWith(SecurityConstant.TOKEN_PREFIX)) {
-                filterChain.doFilter(request, response);
-                return;
-            }
-            String token = authorizationHeader.substring(SecurityConstant.TOKEN_PREFIX.length());
-            String username = this.jwtTokenProvider.getSubject(token);
-            /**
-             * La verificación en el security context holder no es necesaria, ya que no estamos
-             * usando la sesión. Esta parte se puede quitar en la condición
-             */
-            if (this.jwtTokenProvider.isTokenValid(username, token) &&
-                    SecurityContextHolder.getContext().getAuthentication() == null) {
-                List<GrantedAuthority> authorities = this.jwtTokenProvider.getAuthorities(token);
-                Authentication authentication = this.jwtTokenProvider.getAuthentication(username, authorities, request);
-                //Configuramos al usuario como un usuario autenticado en el context security holder
-                SecurityContextHolder.getContext().setAuthentication(authentication);
-            } else {
-                SecurityContextHolder.clearContext();
-            }
+            SecurityContextHolder.clearContext();
         }
         filterChain.doFilter(request, response);
     }
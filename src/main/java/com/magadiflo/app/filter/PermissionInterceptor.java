@@ -0,0 +1,58 @@
+package com.magadiflo.app.filter;
+
+import com.magadiflo.app.domain.PermissionAuthenticationToken;
+import com.magadiflo.app.enumeration.UserPermission;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Verifica @RequiresPermission antes de ejecutar el método del controlador.
+ * <p>
+ * La anotación de cada método se lee una sola vez y se guarda como máscara de bits
+ * (0 = el método no requiere permisos), así en cada petición la verificación es un AND
+ * entre esa máscara y la del usuario (PermissionAuthenticationToken).
+ * <p>
+ * La AccessDeniedException la maneja el ExceptionHandling (403).
+ */
+@Component
+public class PermissionInterceptor implements HandlerInterceptor {
+
+    private final Map<Method, Long> requiredMasks = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        long required = this.requiredMasks.computeIfAbsent(((HandlerMethod) handler).getMethod(), this::requiredMask);
+        if (required == 0) {
+            return true;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (!(authentication instanceof PermissionAuthenticationToken) ||
+                !((PermissionAuthenticationToken) authentication).hasPermissions(required)) {
+            throw new AccessDeniedException("Missing required permissions");
+        }
+        return true;
+    }
+
+    private long requiredMask(Method method) {
+        RequiresPermission annotation = AnnotatedElementUtils.findMergedAnnotation(method, RequiresPermission.class);
+        if (annotation == null) {
+            annotation = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), RequiresPermission.class);
+        }
+        return annotation == null ? 0 : UserPermission.toMask(annotation.value());
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.magadiflo.app.filter;
+
+import com.magadiflo.app.constant.SecurityConstant;
+import com.magadiflo.app.enumeration.RateLimit;
+import com.magadiflo.app.service.RateLimitService;
+import com.magadiflo.app.utility.HttpResponseWriter;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Limita las peticiones a los endpoints costosos o públicos (login, registro, reset de password,
+ * imágenes) antes de que lleguen a Spring Security, así una petición rechazada no verifica
+ * tokens, ni consulta la BD, ni calcula un BCrypt.
+ * <p>
+ * Responde 429 (Too Many Requests) con la cabecera Retry-After en segundos.
+ * La IP es request.getRemoteAddr(); si la aplicación está detrás de un proxy se debe configurar
+ * server.forward-headers-strategy para que Tomcat la tome del X-Forwarded-For.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String[] LOGIN_PATHS = {"/login", "/user/login"};
+    private static final String[] REGISTER_PATHS = {"/register", "/user/register"};
+    private static final String[] PASSWORD_RESET_PATHS = {"/reset-password/*", "/user/reset-password/*"};
+    private static final String[] IMAGE_PATHS = {"/image/**", "/user/image/**"};
+
+    private final RateLimitService rateLimitService;
+    private final HttpResponseWriter httpResponseWriter;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public RateLimitFilter(RateLimitService rateLimitService, HttpResponseWriter httpResponseWriter) {
+        this.rateLimitService = rateLimitService;
+        this.httpResponseWriter = httpResponseWriter;
+        this.httpResponseWriter.prerender(HttpStatus.TOO_MANY_REQUESTS, RateLimitService.TOO_MANY_REQUESTS);
+    }
+
+    //Las peticiones preflight (OPTIONS) del navegador no consumen tokens
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return HttpMethod.OPTIONS.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String ip = request.getRemoteAddr();
+        long retryAfterSeconds = 0;
+        if (this.matches(path, LOGIN_PATHS)) {
+            retryAfterSeconds = this.consume(RateLimit.LOGIN_PER_IP, RateLimit.LOGIN_GLOBAL, ip);
+        } else if (this.matches(path, REGISTER_PATHS)) {
+            retryAfterSeconds = this.consume(RateLimit.REGISTER_PER_IP, RateLimit.REGISTER_GLOBAL, ip);
+        } else if (this.matches(path, PASSWORD_RESET_PATHS)) {
+            retryAfterSeconds = this.consume(RateLimit.PASSWORD_RESET_PER_IP, RateLimit.PASSWORD_RESET_GLOBAL, ip);
+        } else if (this.matches(path, IMAGE_PATHS) && !SecurityConstant.AVATAR_SPRITE_URL.equals(path)) { //El sprite requiere token
+            retryAfterSeconds = this.rateLimitService.tryConsume(RateLimit.IMAGE_PER_IP, ip);
+        }
+
+        if (retryAfterSeconds > 0) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            this.httpResponseWriter.write(response, HttpStatus.TOO_MANY_REQUESTS, RateLimitService.TOO_MANY_REQUESTS);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    //Primero el límite de la IP, así una sola IP no consume los tokens del límite global
+    private long consume(RateLimit perIp, RateLimit global, String ip) {
+        long retryAfterSeconds = this.rateLimitService.tryConsume(perIp, ip);
+        return retryAfterSeconds > 0 ? retryAfterSeconds : this.rateLimitService.tryConsume(global, "");
+    }
+
+    private boolean matches(String path, String[] patterns) {
+        for (String pattern : patterns) {
+            if (this.pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.magadiflo.app.filter;
+
+import com.magadiflo.app.enumeration.UserPermission;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * El usuario autenticado debe tener TODOS los permisos indicados para ejecutar el método
+ * (o cualquier método de la clase). Lo verifica el PermissionInterceptor.
+ * Ejm. @RequiresPermission(UserPermission.USER_DELETE)
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RequiresPermission {
+
+    UserPermission[] value();
+
+}
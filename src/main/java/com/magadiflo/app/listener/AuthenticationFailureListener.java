@@ -1,5 +1,7 @@
 package com.magadiflo.app.listener;
 
+import com.magadiflo.app.enumeration.AuditEventType;
+import com.magadiflo.app.service.AuditService;
 import com.magadiflo.app.service.LoginAttemptService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -7,18 +9,18 @@ import org.springframework.context.event.EventListener;
 import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ExecutionException;
-
 @Component
 public class AuthenticationFailureListener {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private final LoginAttemptService loginAttemptService;
+    private final AuditService auditService;
 
     //Inyección de dependencia por constructor (Por recomendación no usamos el @Autowired)
-    public AuthenticationFailureListener(LoginAttemptService loginAttemptService) {
+    public AuthenticationFailureListener(LoginAttemptService loginAttemptService, AuditService auditService) {
         this.loginAttemptService = loginAttemptService;
+        this.auditService = auditService;
     }
 
     /**
@@ -31,7 +33,12 @@ public class AuthenticationFailureListener {
         Object principal = event.getAuthentication().getPrincipal();
         if (principal instanceof String) {
             String username = (String) principal;
-            this.loginAttemptService.addUserToLoginAttemptCache(username);
+            this.auditService.publish(AuditEventType.LOGIN_FAILURE, username, event.getException().getMessage());
+            //Al llegar al máximo de intentos se bloquea la cuenta en este momento, así los siguientes
+            //intentos se rechazan con la caché de LoginAttemptService.isLoginBlocked sin autenticar
+            if (this.loginAttemptService.addUserToLoginAttemptCache(username) && this.loginAttemptService.lockAccount(username)) {
+                this.auditService.publish(AuditEventType.ACCOUNT_LOCKED, username, "Maximum number of login attempts exceeded");
+            }
         }
     }
 }
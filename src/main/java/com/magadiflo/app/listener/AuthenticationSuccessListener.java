@@ -1,6 +1,8 @@
 package com.magadiflo.app.listener;
 
 import com.magadiflo.app.domain.UserPrincipal;
+import com.magadiflo.app.enumeration.AuditEventType;
+import com.magadiflo.app.service.AuditService;
 import com.magadiflo.app.service.LoginAttemptService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,10 +16,12 @@ public class AuthenticationSuccessListener {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private final LoginAttemptService loginAttemptService;
+    private final AuditService auditService;
 
     //Inyección de dependencia por constructor
-    public AuthenticationSuccessListener(LoginAttemptService loginAttemptService) {
+    public AuthenticationSuccessListener(LoginAttemptService loginAttemptService, AuditService auditService) {
         this.loginAttemptService = loginAttemptService;
+        this.auditService = auditService;
     }
 
     @EventListener
@@ -27,6 +31,7 @@ public class AuthenticationSuccessListener {
         if (principal instanceof UserPrincipal) {
             UserPrincipal userPrincipal = (UserPrincipal) principal;
             this.loginAttemptService.evictUserFromLoginAttemptCache(userPrincipal.getUsername());
+            this.auditService.publish(AuditEventType.LOGIN_SUCCESS, userPrincipal.getUsername(), null);
         }
     }
 
@@ -0,0 +1,45 @@
+package com.magadiflo.app.listener;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registra el tiempo transcurrido desde que inició la JVM hasta el primer inicio de sesión exitoso
+ * (métrica application.first.login.time). Junto a application.started.time y application.ready.time,
+ * que Spring Boot ya publica, permite medir el arranque en frío incluyendo la inicialización
+ * perezosa de los beans que usa el login (perfil prod).
+ */
+@Component
+public class FirstLoginTimeListener {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicBoolean recorded = new AtomicBoolean();
+
+    public FirstLoginTimeListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener
+    public void onAuthenticationSuccess(AuthenticationSuccessEvent event) {
+        if (this.recorded.get() || !this.recorded.compareAndSet(false, true)) {
+            return;
+        }
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        TimeGauge.builder("application.first.login.time", () -> millis, TimeUnit.MILLISECONDS)
+                .description("Time from JVM start to the first successful login")
+                .register(this.meterRegistry);
+        this.logger.info("First successful login {} ms after JVM start", millis);
+    }
+
+}
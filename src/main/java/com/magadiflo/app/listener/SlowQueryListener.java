@@ -0,0 +1,65 @@
+package com.magadiflo.app.listener;
+
+import com.magadiflo.app.utility.RepositoryMethodTracker;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.logging.DefaultQueryLogEntryCreator;
+import net.ttddyy.dsproxy.listener.logging.QueryLogEntryCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reemplaza al spring.jpa.show-sql. En lugar de imprimir todas las sentencias
+ * SQL, mide el tiempo de ejecución de cada una y solo registra en el log:
+ * 1) Las sentencias que superan el umbral (slowThresholdMs).
+ * 2) Una fracción aleatoria (sampleRate) del resto de sentencias, útil para
+ * tener una muestra del tráfico normal sin pagar el costo de loguearlo todo.
+ * <p>
+ * Cada entrada incluye los parámetros (bind parameters) y el método del
+ * repositorio que la originó. El logger de esta clase está asociado a un
+ * AsyncAppender en el logback-spring.xml, así el hilo de la petición nunca
+ * se bloquea escribiendo en la consola.
+ */
+public class SlowQueryListener implements QueryExecutionListener {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final long slowThresholdMs;
+    private final double sampleRate;
+    private final QueryLogEntryCreator queryLogEntryCreator = new DefaultQueryLogEntryCreator();
+
+    public SlowQueryListener(long slowThresholdMs, double sampleRate) {
+        this.slowThresholdMs = slowThresholdMs;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        //No hacemos nada antes de la ejecución, el datasource-proxy ya mide el tiempo por nosotros
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        long elapsedTime = execInfo.getElapsedTime();
+        if (elapsedTime >= this.slowThresholdMs) {
+            this.logger.warn("Slow query ({} ms) from {}: {}", elapsedTime, this.caller(), this.entry(execInfo, queryInfoList));
+        } else if (this.sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < this.sampleRate) {
+            this.logger.info("Sampled query ({} ms) from {}: {}", elapsedTime, this.caller(), this.entry(execInfo, queryInfoList));
+        }
+    }
+
+    private String caller() {
+        String method = RepositoryMethodTracker.currentMethod();
+        return method == null ? "unknown" : method;
+    }
+
+    //Solo construimos la entrada (sql + parámetros) cuando realmente se va a loguear
+    private String entry(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        return this.queryLogEntryCreator.getLogEntry(execInfo, queryInfoList, false, false, false);
+    }
+
+}
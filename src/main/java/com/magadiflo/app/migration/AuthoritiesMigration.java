@@ -0,0 +1,175 @@
+package com.magadiflo.app.migration;
+
+import com.magadiflo.app.domain.Permission;
+import com.magadiflo.app.domain.UserRole;
+import com.magadiflo.app.enumeration.Role;
+import com.magadiflo.app.repository.IPermissionRepository;
+import com.magadiflo.app.repository.IRoleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Migra los permisos del modelo anterior al modelo normalizado.
+ * <p>
+ * Antes, cada usuario tenía una columna users.authorities con un String[]
+ * serializado por Hibernate (un blob). Ahora los permisos se guardan una sola vez
+ * por rol en las tablas roles, permissions y role_permissions.
+ * <p>
+ * 1) Crea los roles que no existan con los permisos definidos en el enum Role.
+ * 2) Solo para los roles recién creados, si aún existe la columna users.authorities, deserializa
+ * los blobs y agrega al rol los permisos que tienen todos sus usuarios. Los usuarios con permisos
+ * distintos a los del rol se registran en el log (el rol no se amplía por un solo usuario).
+ * <p>
+ * Se ejecuta en cada inicio (ver PermissionResolver), pero los blobs se leen una sola vez: en los
+ * siguientes inicios los roles ya existen, así no se vuelven a otorgar los permisos que un
+ * administrador quitó en role_permissions. La columna no se elimina aquí, sino con
+ * LegacyAuthoritiesColumnMigration, que solo se ejecuta si se habilita.
+ */
+@Component
+public class AuthoritiesMigration {
+
+    private static final String LEGACY_AUTHORITIES_COLUMN_EXISTS = "SELECT COUNT(*) FROM information_schema.columns " +
+            "WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'authorities'";
+    private static final String SELECT_LEGACY_AUTHORITIES = "SELECT username, role, authorities FROM users WHERE authorities IS NOT NULL";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IRoleRepository roleRepository;
+    private final IPermissionRepository permissionRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public AuthoritiesMigration(IRoleRepository roleRepository, IPermissionRepository permissionRepository,
+                                JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.roleRepository = roleRepository;
+        this.permissionRepository = permissionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public void migrate() {
+        Set<String> createdRoles = new HashSet<>();
+        this.transactionTemplate.executeWithoutResult(status -> {
+            for (Role role : Role.values()) {
+                if (this.roleRepository.findRoleByName(role.name()) == null) {
+                    this.grant(role.name(), Arrays.asList(role.getAuthorities()));
+                    createdRoles.add(role.name());
+                    this.logger.info("Created role {} with its default permissions", role.name());
+                }
+            }
+        });
+
+        if (createdRoles.isEmpty() || !this.hasLegacyColumn()) {
+            return;
+        }
+        //1ra lectura: permisos que tienen todos los usuarios de cada rol
+        Map<String, Set<String>> commonAuthorities = new HashMap<>();
+        this.forEachLegacyAuthorities(createdRoles, (username, role, authorities) ->
+                commonAuthorities.merge(role, authorities, (common, user) -> {
+                    common.retainAll(user);
+                    return common;
+                }));
+        this.transactionTemplate.executeWithoutResult(status -> commonAuthorities.forEach(this::grant));
+
+        //2da lectura: usuarios cuyos permisos no coinciden con los del rol
+        Map<String, Set<String>> roleAuthorities = new HashMap<>();
+        for (String role : createdRoles) {
+            Set<String> authorities = new HashSet<>(Arrays.asList(Role.valueOf(role).getAuthorities()));
+            authorities.addAll(commonAuthorities.getOrDefault(role, Collections.emptySet()));
+            roleAuthorities.put(role, authorities);
+        }
+        this.forEachLegacyAuthorities(createdRoles, (username, role, authorities) -> {
+            Set<String> extra = new TreeSet<>(authorities);
+            extra.removeAll(roleAuthorities.get(role));
+            Set<String> missing = new TreeSet<>(roleAuthorities.get(role));
+            missing.removeAll(authorities);
+            if (!extra.isEmpty() || !missing.isEmpty()) {
+                this.logger.warn("User {} had permissions that differ from role {}: not granted {}, now granted {}",
+                        username, role, extra, missing);
+            }
+        });
+        this.logger.info("Migrated users.authorities to role_permissions for {}", createdRoles);
+    }
+
+    public boolean hasLegacyColumn() {
+        Integer legacyColumn = this.jdbcTemplate.queryForObject(LEGACY_AUTHORITIES_COLUMN_EXISTS, Integer.class);
+        return legacyColumn != null && legacyColumn > 0;
+    }
+
+    //Recorre los blobs de los usuarios de los roles indicados sin cargarlos todos en memoria
+    private void forEachLegacyAuthorities(Set<String> roles, LegacyAuthoritiesHandler handler) {
+        this.jdbcTemplate.query(SELECT_LEGACY_AUTHORITIES, resultSet -> {
+            String role = resultSet.getString("role");
+            if (roles.contains(role)) {
+                Set<String> authorities = new HashSet<>(Arrays.asList(this.deserialize(resultSet.getBytes("authorities"))));
+                handler.handle(resultSet.getString("username"), role, authorities);
+            }
+        });
+    }
+
+    private void grant(String roleName, Collection<String> authorities) {
+        UserRole role = this.roleRepository.findRoleByName(roleName);
+        if (role == null) {
+            role = new UserRole(roleName);
+        }
+        for (String authority : authorities) {
+            boolean granted = role.getPermissions().stream().anyMatch(permission -> permission.getName().equals(authority));
+            if (!granted) {
+                Permission permission = this.permissionRepository.findPermissionByName(authority);
+                if (permission == null) {
+                    permission = this.permissionRepository.save(new Permission(authority));
+                }
+                role.getPermissions().add(permission);
+            }
+        }
+        this.roleRepository.save(role);
+    }
+
+    //Solo se permite deserializar un String[], cualquier otra clase en el blob se rechaza
+    private String[] deserialize(byte[] blob) {
+        try (ObjectInputStream objectInputStream = new StringArrayInputStream(new ByteArrayInputStream(blob))) {
+            return (String[]) objectInputStream.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Could not read legacy users.authorities value", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface LegacyAuthoritiesHandler {
+        void handle(String username, String role, Set<String> authorities);
+    }
+
+    private static class StringArrayInputStream extends ObjectInputStream {
+
+        StringArrayInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!String[].class.getName().equals(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Unexpected class in users.authorities");
+            }
+            return super.resolveClass(desc);
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.magadiflo.app.migration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Elimina la columna users.authorities del modelo anterior (ver AuthoritiesMigration).
+ * <p>
+ * No se ejecuta en cada inicio: se habilita con migration.drop-legacy-authorities-column: true
+ * una vez que ninguna instancia con la versión anterior lee la columna, y luego se vuelve a
+ * deshabilitar. Antes de eliminarla se vuelven a migrar los permisos, así no se pierde ninguno
+ * aunque se ejecute antes que el PermissionResolver.
+ */
+@Component
+@ConditionalOnProperty(prefix = "migration", name = "drop-legacy-authorities-column", havingValue = "true")
+public class LegacyAuthoritiesColumnMigration implements SmartInitializingSingleton {
+
+    private static final String DROP_LEGACY_AUTHORITIES_COLUMN = "ALTER TABLE users DROP COLUMN authorities";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final AuthoritiesMigration authoritiesMigration;
+    private final JdbcTemplate jdbcTemplate;
+
+    public LegacyAuthoritiesColumnMigration(AuthoritiesMigration authoritiesMigration, JdbcTemplate jdbcTemplate) {
+        this.authoritiesMigration = authoritiesMigration;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!this.authoritiesMigration.hasLegacyColumn()) {
+            this.logger.info("users.authorities was already dropped");
+            return;
+        }
+        this.authoritiesMigration.migrate();
+        //El DDL en MySQL hace commit implícito, por eso se ejecuta fuera de la transacción
+        this.jdbcTemplate.execute(DROP_LEGACY_AUTHORITIES_COLUMN);
+        this.logger.info("Dropped the legacy users.authorities column");
+    }
+
+}
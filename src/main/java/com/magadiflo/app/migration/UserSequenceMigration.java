@@ -0,0 +1,79 @@
+package com.magadiflo.app.migration;
+
+import com.magadiflo.app.domain.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Prepara la secuencia de ids de los usuarios (ver User.id).
+ * <p>
+ * Antes el id se generaba con GenerationType.AUTO, que en MySQL usa la tabla
+ * compartida hibernate_sequence. Ahora se usa la tabla users_seq (una sola fila,
+ * columna next_val), que debe empezar después del mayor id existente para que
+ * los nuevos usuarios no choquen con los anteriores.
+ * <p>
+ * Es idempotente, se ejecuta en cada inicio antes de que el servidor reciba peticiones.
+ * Si varios nodos inician a la vez, un lock con nombre de MySQL (GET_LOCK) los ejecuta de
+ * uno en uno, así la tabla nunca tiene más de una fila.
+ */
+@Component
+public class UserSequenceMigration implements SmartInitializingSingleton {
+
+    private static final String SELECT_NEXT_VALUE = "SELECT MAX(next_val) FROM " + User.ID_SEQUENCE;
+    private static final String SELECT_MAX_USER_ID = "SELECT COALESCE(MAX(id), 0) FROM users";
+    private static final String INSERT_NEXT_VALUE = "INSERT INTO " + User.ID_SEQUENCE + " (next_val) VALUES (?)";
+    private static final String UPDATE_NEXT_VALUE = "UPDATE " + User.ID_SEQUENCE + " SET next_val = ? WHERE next_val < ?";
+    private static final String LOCK_NAME = User.ID_SEQUENCE + "_migration";
+    private static final String GET_LOCK = "SELECT GET_LOCK(?, ?)";
+    private static final String RELEASE_LOCK = "SELECT RELEASE_LOCK(?)";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public UserSequenceMigration(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        this.transactionTemplate.executeWithoutResult(status -> {
+            Integer locked = this.jdbcTemplate.queryForObject(GET_LOCK, Integer.class, LOCK_NAME, LOCK_TIMEOUT_SECONDS);
+            if (locked == null || locked != 1) {
+                throw new IllegalStateException("Could not acquire the lock " + LOCK_NAME);
+            }
+            //El lock es de la conexión: se libera después del commit, así el siguiente nodo ya ve la fila
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    UserSequenceMigration.this.jdbcTemplate.queryForObject(RELEASE_LOCK, Integer.class, LOCK_NAME);
+                }
+            });
+            this.initialize();
+        });
+    }
+
+    private void initialize() {
+        Long maxUserId = this.jdbcTemplate.queryForObject(SELECT_MAX_USER_ID, Long.class);
+        long firstFreeId = (maxUserId == null ? 0 : maxUserId) + 1;
+        Long nextValue = this.jdbcTemplate.queryForObject(SELECT_NEXT_VALUE, Long.class);
+        if (nextValue == null) {
+            this.jdbcTemplate.update(INSERT_NEXT_VALUE, firstFreeId);
+            this.logger.info("Initialized {} at {}", User.ID_SEQUENCE, firstFreeId);
+        } else if (nextValue < firstFreeId) {
+            //El WHERE evita retroceder la secuencia si otro nodo ya la avanzó
+            this.jdbcTemplate.update(UPDATE_NEXT_VALUE, firstFreeId, firstFreeId);
+            this.logger.info("Moved {} from {} to {}", User.ID_SEQUENCE, nextValue, firstFreeId);
+        }
+    }
+
+}
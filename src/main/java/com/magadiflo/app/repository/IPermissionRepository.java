@@ -0,0 +1,10 @@
+package com.magadiflo.app.repository;
+
+import com.magadiflo.app.domain.Permission;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface IPermissionRepository extends JpaRepository<Permission, Long> {
+
+    Permission findPermissionByName(String name);
+
+}
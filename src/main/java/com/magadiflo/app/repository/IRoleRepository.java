@@ -0,0 +1,17 @@
+package com.magadiflo.app.repository;
+
+import com.magadiflo.app.domain.UserRole;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface IRoleRepository extends JpaRepository<UserRole, Long> {
+
+    UserRole findRoleByName(String name);
+
+    //Con una sola consulta traemos todos los roles con sus permisos
+    @Query("select distinct r from UserRole r left join fetch r.permissions")
+    List<UserRole> findAllWithPermissions();
+
+}
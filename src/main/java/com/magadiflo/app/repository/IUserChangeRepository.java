@@ -0,0 +1,66 @@
+package com.magadiflo.app.repository;
+
+import com.magadiflo.app.domain.UserChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface IUserChangeRepository extends JpaRepository<UserChange, Long> {
+
+    List<UserChange> findByVersionGreaterThanOrderByVersionAsc(long version, Pageable pageable);
+
+    @Query("select min(c.version) from UserChange c")
+    Long findOldestVersion();
+
+    //Primera versión desde from cuya siguiente aún no existe, es decir, la última versión antes de un hueco
+    @Query("select min(c.version) from UserChange c where c.version >= :from and " +
+            "not exists (select n.version from UserChange n where n.version = c.version + 1)")
+    Long findSettledVersion(@Param("from") long from);
+
+    /**
+     * Cierra un hueco de versiones. Si la versión pertenece a una transacción que aún no termina,
+     * el INSERT espera su bloqueo: falla por clave duplicada si la transacción se confirma
+     * o se inserta si se revierte
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into user_changes (version, type, changed_date) values (:version, 'SKIPPED', :now)",
+            nativeQuery = true)
+    int insertSkipped(@Param("version") long version, @Param("now") Instant now);
+
+    /**
+     * Registran en un solo INSERT ... SELECT el cambio de varios usuarios, para los UPDATE masivos
+     * que no pasan por la entidad (deben ejecutarse en la misma transacción, antes del UPDATE).
+     * flushAutomatically, así se ven los usuarios guardados en la transacción que aún no se enviaron a la BD
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into user_changes (type, user_id, username, changed_date) " +
+            "select :type, user_id, username, :now from users where username in (:usernames) and deleted = 0",
+            nativeQuery = true)
+    int insertChanges(@Param("type") String type, @Param("usernames") Collection<String> usernames, @Param("now") Instant now);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into user_changes (type, user_id, username, changed_date) " +
+            "select 'UNLOCKED', user_id, username, :now from users " +
+            "where username in (:usernames) and is_not_locked = 0 and deleted = 0", nativeQuery = true)
+    int insertUnlockChanges(@Param("usernames") Collection<String> usernames, @Param("now") Instant now);
+
+    @Modifying
+    @Query(value = "insert into user_changes (type, user_id, username, changed_date) " +
+            "select 'UNLOCKED', user_id, username, :now from users " +
+            "where is_not_locked = 0 and locked_until <= :now and deleted = 0", nativeQuery = true)
+    int insertExpiredUnlockChanges(@Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UserChange c where c.changedDate < :cutoff")
+    int deleteOlderThan(@Param("cutoff") Instant cutoff);
+
+}
@@ -0,0 +1,41 @@
+package com.magadiflo.app.repository;
+
+import com.magadiflo.app.enumeration.UserField;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Consultas de solo lectura que seleccionan únicamente las columnas solicitadas,
+ * en lugar de cargar la entidad User completa (password incluido).
+ * <p>
+ * Cada fila se devuelve como un mapa jsonName -> valor, en el orden de UserField.
+ * Si se solicita AUTHORITIES, la fila incluye la columna role (necesaria para resolverlo)
+ * y la clave authorities con valor null, que debe completar el servicio.
+ */
+public interface IUserProjectionRepository {
+
+    //Clave del id en las filas de findProjectedAfterId, necesaria para pedir la siguiente página
+    String KEYSET_ID = "id";
+
+    //passwordResetRequired: solo los usuarios con ese valor, null para no filtrar
+    List<Map<String, Object>> findAllProjected(Set<UserField> fields, Boolean passwordResetRequired);
+
+    Map<String, Object> findProjectedByUsername(String username, Set<UserField> fields);
+
+    /**
+     * Paginación por id (keyset): devuelve hasta limit filas con id mayor a lastId, ordenadas por id.
+     * Cada fila incluye además la clave KEYSET_ID.
+     */
+    List<Map<String, Object>> findProjectedAfterId(long lastId, int limit, Set<UserField> fields);
+
+    /**
+     * Busca varios usuarios con una sola consulta (IN) por keyField (USERNAME o USER_ID).
+     * Devuelve las filas encontradas indexadas por el valor de keyField, los valores que no
+     * existen simplemente no aparecen. El orden del mapa no es el de keys.
+     */
+    Map<String, Map<String, Object>> findProjectedByKeys(UserField keyField, Collection<String> keys, Set<UserField> fields);
+
+}
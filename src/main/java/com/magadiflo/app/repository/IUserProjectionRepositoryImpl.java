@@ -0,0 +1,135 @@
+package com.magadiflo.app.repository;
+
+import com.magadiflo.app.domain.User;
+import com.magadiflo.app.enumeration.UserField;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implementación del fragmento IUserProjectionRepository. Spring Data la encuentra
+ * por el sufijo Impl y la combina con el proxy de IUserRepository.
+ */
+public class IUserProjectionRepositoryImpl implements IUserProjectionRepository {
+
+    //Alias de la columna usada en findProjectedByKeys para indexar las filas, no se incluye en la fila
+    private static final String KEY_ALIAS = "_key";
+
+    private final EntityManager entityManager;
+
+    public IUserProjectionRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<Map<String, Object>> findAllProjected(Set<UserField> fields, Boolean passwordResetRequired) {
+        return this.find(fields, null, null, passwordResetRequired, null, null);
+    }
+
+    @Override
+    public Map<String, Object> findProjectedByUsername(String username, Set<UserField> fields) {
+        Map<String, Map<String, Object>> rows = this.findProjectedByKeys(UserField.USERNAME, Collections.singleton(username), fields);
+        return rows.isEmpty() ? null : rows.values().iterator().next();
+    }
+
+    @Override
+    public List<Map<String, Object>> findProjectedAfterId(long lastId, int limit, Set<UserField> fields) {
+        return this.find(fields, null, null, null, lastId, limit);
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> findProjectedByKeys(UserField keyField, Collection<String> keys, Set<UserField> fields) {
+        Map<String, Map<String, Object>> rowsByKey = new HashMap<>();
+        if (keys.isEmpty()) {
+            return rowsByKey;
+        }
+        for (Map<String, Object> row : this.find(fields, keyField, keys, null, null, null)) {
+            rowsByKey.put((String) row.remove(KEY_ALIAS), row);
+        }
+        return rowsByKey;
+    }
+
+    //keyField y keys: filtro keyField = keys (uno solo) o keyField IN (keys), null para no filtrar
+    private List<Map<String, Object>> find(Set<UserField> fields, UserField keyField, Collection<String> keys,
+                                           Boolean passwordResetRequired, Long lastId, Integer limit) {
+        Set<UserField> columns = EnumSet.noneOf(UserField.class);
+        for (UserField field : fields) {
+            if (field.isColumn()) {
+                columns.add(field);
+            }
+        }
+        if (fields.contains(UserField.AUTHORITIES)) {
+            columns.add(UserField.ROLE);
+        }
+
+        CriteriaBuilder criteriaBuilder = this.entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<User> root = query.from(User.class);
+        List<Selection<?>> selections = new ArrayList<>(columns.size() + 1);
+        if (lastId != null) {
+            selections.add(root.get(KEYSET_ID).alias(KEYSET_ID));
+        }
+        if (keys != null) {
+            selections.add(root.get(keyField.getAttribute()).alias(KEY_ALIAS));
+        }
+        for (UserField column : columns) {
+            selections.add(root.get(column.getAttribute()).alias(column.getJsonName()));
+        }
+        query.multiselect(selections);
+        List<Predicate> predicates = new ArrayList<>(2);
+        if (keys != null) {
+            predicates.add(keys.size() == 1
+                    ? criteriaBuilder.equal(root.get(keyField.getAttribute()), keys.iterator().next())
+                    : root.get(keyField.getAttribute()).in(keys));
+        }
+        if (passwordResetRequired != null) {
+            predicates.add(criteriaBuilder.equal(root.get(UserField.PASSWORD_RESET_REQUIRED.getAttribute()), passwordResetRequired));
+        }
+        if (lastId != null) {
+            predicates.add(criteriaBuilder.greaterThan(root.get(KEYSET_ID), lastId));
+            query.orderBy(criteriaBuilder.asc(root.get(KEYSET_ID)));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+
+        TypedQuery<Tuple> typedQuery = this.entityManager.createQuery(query);
+        if (limit != null) {
+            typedQuery.setMaxResults(limit);
+        }
+        List<Tuple> tuples = typedQuery.getResultList();
+        List<Map<String, Object>> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            if (lastId != null) {
+                row.put(KEYSET_ID, tuple.get(KEYSET_ID));
+            }
+            if (keys != null) {
+                row.put(KEY_ALIAS, tuple.get(KEY_ALIAS));
+            }
+            for (UserField field : UserField.values()) {
+                if (columns.contains(field)) {
+                    row.put(field.getJsonName(), tuple.get(field.getJsonName()));
+                } else if (fields.contains(field)) {
+                    row.put(field.getJsonName(), null);
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+}
@@ -1,12 +1,89 @@
 package com.magadiflo.app.repository;
 
 import com.magadiflo.app.domain.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface IUserRepository extends JpaRepository<User, Long> {
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface IUserRepository extends JpaRepository<User, Long>, IUserProjectionRepository {
 
     User findUserByUsername(String username);
 
     User findUserByEmail(String email);
 
+    //Paginación por id (keyset), a diferencia del OFFSET no se vuelve más lenta en las últimas páginas
+    List<User> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    //Validaciones de unicidad por conjuntos, una sola consulta para todo un lote de usuarios
+    @Query("select u.username from User u where u.username in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    @Query("select u.email from User u where u.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    //[isNotLocked, lockedUntil] del usuario, vacío si no existe
+    @Query("select u.isNotLocked, u.lockedUntil from User u where u.username = :username")
+    List<Object[]> findLockState(@Param("username") String username);
+
+    //Cuentas con un bloqueo vigente (sin vencimiento o que aún no venció)
+    @Query("select count(u) from User u where u.isNotLocked = false and (u.lockedUntil is null or u.lockedUntil > :now)")
+    long countLocked(@Param("now") Instant now);
+
+    //Se incrementa la versión (@Version) porque el UPDATE no pasa por la entidad
+    @Transactional
+    @Modifying
+    @Query("update User u set u.isNotLocked = false, u.lockedUntil = :lockedUntil, u.version = u.version + 1 " +
+            "where u.username = :username and u.isNotLocked = true")
+    int lockUser(@Param("username") String username, @Param("lockedUntil") Instant lockedUntil);
+
+    //Desbloquea en un solo UPDATE todas las cuentas cuyo bloqueo ya venció
+    @Transactional
+    @Modifying
+    @Query("update User u set u.isNotLocked = true, u.lockedUntil = null, u.version = u.version + 1 " +
+            "where u.isNotLocked = false and u.lockedUntil <= :now")
+    int unlockExpired(@Param("now") Instant now);
+
+    //Después de enviar el correo con el password de un usuario importado (ver User.passwordResetRequired)
+    @Transactional
+    @Modifying
+    @Query("update User u set u.passwordResetRequired = false, u.version = u.version + 1 " +
+            "where u.username = :username and u.passwordResetRequired = true")
+    int clearPasswordResetRequired(@Param("username") String username);
+
+    //Cuáles de los usernames están bloqueados. FOR UPDATE, así otra petición no desbloquea los mismos a la vez
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u.username from User u where u.username in :usernames and u.isNotLocked = false")
+    List<String> findLockedUsernames(@Param("usernames") Collection<String> usernames);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.isNotLocked = true, u.lockedUntil = null, u.version = u.version + 1 " +
+            "where u.username in :usernames and u.isNotLocked = false")
+    int unlockUsers(@Param("usernames") Collection<String> usernames);
+
+    /**
+     * Consultas nativas del UserPurgeService, las únicas que ven a los usuarios eliminados
+     * (el @Where de User solo aplica a las consultas sobre la entidad).
+     * Las columnas BIGINT de una consulta nativa se obtienen como BigInteger, por eso Number.
+     */
+    @Query(value = "select id from users where deleted = 1 and deleted_date <= :cutoff and id > :afterId order by id limit :limit",
+            nativeQuery = true)
+    List<Number> findDeletedIds(@Param("cutoff") Instant cutoff, @Param("afterId") long afterId, @Param("limit") int limit);
+
+    @Query(value = "select count(*) from users where deleted = 1", nativeQuery = true)
+    long countDeleted();
+
+    @Modifying
+    @Query(value = "delete from users where id in (:ids) and deleted = 1", nativeQuery = true)
+    int purgeDeleted(@Param("ids") Collection<Long> ids);
+
 }
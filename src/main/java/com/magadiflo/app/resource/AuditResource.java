@@ -0,0 +1,37 @@
+package com.magadiflo.app.resource;
+
+import com.magadiflo.app.domain.AuditEvent;
+import com.magadiflo.app.enumeration.UserPermission;
+import com.magadiflo.app.filter.RequiresPermission;
+import com.magadiflo.app.service.AuditService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping(path = "/audit")
+public class AuditResource {
+
+    private static final int MAXIMUM_LIMIT = 50;
+
+    private final AuditService auditService;
+
+    public AuditResource(AuditService auditService) {
+        this.auditService = auditService;
+    }
+
+    @GetMapping("/{username}")
+    @RequiresPermission(UserPermission.USER_DELETE)
+    public ResponseEntity<List<AuditEvent>> getRecentEvents(@PathVariable String username,
+                                                            @RequestParam(defaultValue = "20") int limit) {
+        List<AuditEvent> events = this.auditService.getRecentEvents(username, Math.max(1, Math.min(limit, MAXIMUM_LIMIT)));
+        return new ResponseEntity<>(events, HttpStatus.OK);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.magadiflo.app.resource;
+
+import com.magadiflo.app.constant.SecurityConstant;
+import com.magadiflo.app.utility.JwtSigningKeys;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publica las claves públicas con las que se verifican los JWT (JSON Web Key Set).
+ * Los demás servicios las descargan una vez y verifican los tokens localmente (ver el módulo jwt-verifier).
+ * <p>
+ * Las claves solo cambian al rotarlas (nuevo kid), por eso la respuesta se puede guardar en caché.
+ */
+@RestController
+public class JwksResource {
+
+    private static final long JWKS_MAX_AGE_HOURS = 24;
+
+    private final JwtSigningKeys jwtSigningKeys;
+
+    public JwksResource(JwtSigningKeys jwtSigningKeys) {
+        this.jwtSigningKeys = jwtSigningKeys;
+    }
+
+    @GetMapping(path = SecurityConstant.JWKS_URL, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getJwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(JWKS_MAX_AGE_HOURS, TimeUnit.HOURS).cachePublic())
+                .body(this.jwtSigningKeys.getJwks());
+    }
+
+}
@@ -2,31 +2,55 @@ package com.magadiflo.app.resource;
 
 import com.magadiflo.app.constant.FileConstant;
 import com.magadiflo.app.constant.SecurityConstant;
+import com.magadiflo.app.constant.UserImplConstant;
+import com.magadiflo.app.domain.AvatarSprite;
 import com.magadiflo.app.domain.HttpResponse;
 import com.magadiflo.app.domain.User;
+import com.magadiflo.app.domain.UserChangeSet;
+import com.magadiflo.app.domain.UserImportResult;
 import com.magadiflo.app.domain.UserPrincipal;
+import com.magadiflo.app.domain.UserSearchResult;
+import com.magadiflo.app.enumeration.UserField;
+import com.magadiflo.app.enumeration.UserPermission;
 import com.magadiflo.app.exception.ExceptionHandling;
 import com.magadiflo.app.exception.domain.*;
+import com.magadiflo.app.filter.RequiresPermission;
+import com.magadiflo.app.service.AvatarSpriteService;
 import com.magadiflo.app.service.IUserService;
+import com.magadiflo.app.service.LoginAttemptService;
+import com.magadiflo.app.service.PermissionResolver;
+import com.magadiflo.app.service.ProfileImageStore;
+import com.magadiflo.app.service.RateLimitService;
+import com.magadiflo.app.service.UserChangeFeed;
+import com.magadiflo.app.service.UserBulkService;
+import com.magadiflo.app.utility.HttpResponseWriter;
 import com.magadiflo.app.utility.JWTTokenProvider;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.mail.MessagingException;
+import javax.servlet.http.HttpServletRequest;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -42,10 +66,25 @@ public class UserResource extends ExceptionHandling {
 
     public static final String EMAIL_SENT = "An email with a new password was sent to: ";
     public static final String USER_DELETED_SUCCESSFULLY = "User deleted successfully";
+    public static final int MAXIMUM_SEARCH_PAGE_SIZE = 100;
+    public static final int MAXIMUM_UNLOCK_USERNAMES = 1000;
+    public static final String ACCOUNTS_UNLOCKED = "Accounts unlocked: ";
+    public static final String TOO_MANY_USERNAMES = "Too many usernames, the maximum is " + MAXIMUM_UNLOCK_USERNAMES;
+    public static final int MAXIMUM_FIND_MANY_IDENTIFIERS = 500;
+    public static final String TOO_MANY_IDENTIFIERS = "Too many identifiers, the maximum is " + MAXIMUM_FIND_MANY_IDENTIFIERS;
+    public static final int MAXIMUM_CHANGES_PAGE_SIZE = 1000;
+    public static final String USERNAMES_OR_USER_IDS_REQUIRED = "Either usernames or userIds is required, but not both";
 
     private final IUserService userService;
     private final AuthenticationManager authenticationManager;
     private final JWTTokenProvider jwtTokenProvider;
+    private final UserBulkService userBulkService;
+    private final RateLimitService rateLimitService;
+    private final LoginAttemptService loginAttemptService;
+    private final ProfileImageStore profileImageStore;
+    private final AvatarSpriteService avatarSpriteService;
+    private final UserChangeFeed userChangeFeed;
+    private final PermissionResolver permissionResolver;
 
     /******* INYECCIÓN DE DEPENDENCIA POR CONSTRUCTOR *******
      * Cuando se inyecta vía constructor la anotación @Autowired normalmente no es necesaria
@@ -59,10 +98,22 @@ public class UserResource extends ExceptionHandling {
      * Ver documento explicativo:
      * <a href="https://www.dev-util.com/java/spring-framework/inyeccion-de-dependencias-autowired-o-por-constructor-en-spring#_inyecci%C3%B3n_por_constructor">Inyección de dependencias en Spring Framework</a>
      */
-    public UserResource(IUserService userService, AuthenticationManager authenticationManager, JWTTokenProvider jwtTokenProvider) {
+    public UserResource(IUserService userService, AuthenticationManager authenticationManager, JWTTokenProvider jwtTokenProvider,
+                        HttpResponseWriter httpResponseWriter, UserBulkService userBulkService,
+                        RateLimitService rateLimitService, LoginAttemptService loginAttemptService,
+                        ProfileImageStore profileImageStore, AvatarSpriteService avatarSpriteService,
+                        UserChangeFeed userChangeFeed, PermissionResolver permissionResolver) {
+        super(httpResponseWriter);
         this.userService = userService;
         this.authenticationManager = authenticationManager;
         this.jwtTokenProvider = jwtTokenProvider;
+        this.userBulkService = userBulkService;
+        this.rateLimitService = rateLimitService;
+        this.loginAttemptService = loginAttemptService;
+        this.profileImageStore = profileImageStore;
+        this.avatarSpriteService = avatarSpriteService;
+        this.userChangeFeed = userChangeFeed;
+        this.permissionResolver = permissionResolver;
     }
 
     @PostMapping("/register")
@@ -73,10 +124,11 @@ public class UserResource extends ExceptionHandling {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<User> login(@RequestBody User user) {
+    public ResponseEntity<User> login(@RequestBody User user) throws RateLimitExceededException {
+        this.rateLimitService.checkLogin(user.getUsername()); //Límite por username, sin importar desde cuántas IPs se intente
         this.authenticate(user.getUsername(), user.getPassword());
         User loginUser = this.userService.findUserByUsername(user.getUsername());
-        UserPrincipal userPrincipal = new UserPrincipal(loginUser);
+        UserPrincipal userPrincipal = new UserPrincipal(loginUser, this.permissionResolver.getPermissionMask(loginUser.getRole()));
         HttpHeaders jwtHeader = this.getJwtHeader(userPrincipal);
 
         return new ResponseEntity<>(loginUser, jwtHeader, HttpStatus.OK);
@@ -91,15 +143,20 @@ public class UserResource extends ExceptionHandling {
                                            @RequestParam String isActive,
                                            @RequestParam String isNotLocked,
                                            @RequestParam(required = false) MultipartFile profileImage)
-            throws UserNotFoundException, EmailExistException, IOException, UsernameExistException, NotAnImageFileException {
+            throws UserNotFoundException, EmailExistException, IOException, UsernameExistException, NotAnImageFileException, ImageTooLargeException {
 
         User newUser = this.userService.addNewUser(firstName, lastName, username, email, role,
                 Boolean.parseBoolean(isNotLocked), Boolean.parseBoolean(isActive), profileImage);
         return new ResponseEntity<>(newUser, HttpStatus.OK);
     }
 
+    /**
+     * If-Match (opcional), ETag del usuario obtenido al consultarlo. Si el usuario fue modificado
+     * después, responde 412 (Precondition Failed) en lugar de sobrescribir esos cambios.
+     */
     @PostMapping("/update")
-    public ResponseEntity<User> update(@RequestParam String currentUsername,
+    public ResponseEntity<User> update(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                       @RequestParam String currentUsername,
                                        @RequestParam String firstName,
                                        @RequestParam String lastName,
                                        @RequestParam String username,
@@ -108,47 +165,214 @@ public class UserResource extends ExceptionHandling {
                                        @RequestParam String isActive,
                                        @RequestParam String isNotLocked,
                                        @RequestParam(required = false) MultipartFile profileImage)
-            throws UserNotFoundException, EmailExistException, IOException, UsernameExistException, NotAnImageFileException {
+            throws UserNotFoundException, EmailExistException, IOException, UsernameExistException, NotAnImageFileException, ImageTooLargeException,
+            PreconditionFailedException {
 
         User updatedUser = this.userService.updateUser(currentUsername, firstName, lastName, username, email, role,
-                Boolean.parseBoolean(isNotLocked), Boolean.parseBoolean(isActive), profileImage);
-        return new ResponseEntity<>(updatedUser, HttpStatus.OK);
+                Boolean.parseBoolean(isNotLocked), Boolean.parseBoolean(isActive), profileImage, this.parseIfMatch(ifMatch));
+        return ResponseEntity.ok().eTag(this.eTag(updatedUser.getVersion())).body(updatedUser);
+    }
+
+    /**
+     * Actualización parcial, el cuerpo solo incluye los campos a modificar, ejm. {"email": "nuevo@mail.com"}
+     * Campos permitidos: firstName, lastName, username, email, role, active, notLocked
+     */
+    @PatchMapping("/update/{username}")
+    @RequiresPermission(UserPermission.USER_UPDATE)
+    public ResponseEntity<User> patch(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                      @PathVariable String username, @RequestBody Map<String, Object> changes)
+            throws UserNotFoundException, EmailExistException, UsernameExistException, InvalidFieldException,
+            PreconditionFailedException {
+
+        User updatedUser = this.userService.patchUser(username, changes, this.parseIfMatch(ifMatch));
+        return ResponseEntity.ok().eTag(this.eTag(updatedUser.getVersion())).body(updatedUser);
     }
 
+    /**
+     * fields (opcional), campos separados por comas que se desean obtener, ejm. ?fields=username,email
+     * Solo se consultan en la BD las columnas de esos campos. Si no se envía se devuelven todos.
+     */
     @GetMapping("/find/{username}")
-    public ResponseEntity<User> getUser(@PathVariable String username) {
-        User user = this.userService.findUserByUsername(username);
+    public ResponseEntity<Map<String, Object>> getUser(@PathVariable String username,
+                                                       @RequestParam(required = false) String fields)
+            throws InvalidFieldException {
+        Map<String, Object> user = this.userService.findUserByUsername(username, UserField.parse(fields));
+        Object version = user == null ? null : user.get(UserField.VERSION.getJsonName());
+        if (version != null) {
+            return ResponseEntity.ok().eTag(this.eTag((Long) version)).body(user);
+        }
         return new ResponseEntity<>(user, HttpStatus.OK);
     }
 
+    /**
+     * Búsqueda de varios usuarios con una sola consulta (IN), en lugar de llamar a /find/{username} por cada uno.
+     * Ejm. /user/find-many?usernames=user1,user2&fields=username,email o /user/find-many?userIds=...
+     * Con POST los parámetros pueden enviarse como formulario (application/x-www-form-urlencoded),
+     * útil cuando la lista no entra en la URL.
+     * La respuesta es un objeto identificador -> usuario en el mismo orden de la petición,
+     * con null para los identificadores que no existen.
+     */
+    @RequestMapping(path = "/find-many", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<Map<String, Map<String, Object>>> findUsers(@RequestParam(required = false) List<String> usernames,
+                                                                      @RequestParam(required = false) List<String> userIds,
+                                                                      @RequestParam(required = false) String fields)
+            throws InvalidFieldException {
+        if ((usernames == null) == (userIds == null)) {
+            throw new InvalidFieldException(USERNAMES_OR_USER_IDS_REQUIRED);
+        }
+        List<String> identifiers = usernames != null ? usernames : userIds;
+        if (identifiers.size() > MAXIMUM_FIND_MANY_IDENTIFIERS) {
+            throw new InvalidFieldException(TOO_MANY_IDENTIFIERS);
+        }
+        UserField keyField = usernames != null ? UserField.USERNAME : UserField.USER_ID;
+        return new ResponseEntity<>(this.userService.findUsers(keyField, identifiers, UserField.parse(fields)), HttpStatus.OK);
+    }
+
+    /**
+     * Sincronización incremental: cambios posteriores a since y el estado actual de esos usuarios.
+     * Sin since solo se devuelve nextSince, luego se descarga /user/list y se continúa desde nextSince.
+     * Ejm. /user/changes?since=1520&limit=500&fields=username,email
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<UserChangeSet> getChanges(@RequestParam(required = false) Long since,
+                                                    @RequestParam(defaultValue = "500") int limit,
+                                                    @RequestParam(required = false) String fields)
+            throws InvalidFieldException {
+        int pageSize = Math.max(1, Math.min(limit, MAXIMUM_CHANGES_PAGE_SIZE));
+        return new ResponseEntity<>(this.userService.getChanges(since, pageSize, UserField.parse(fields)), HttpStatus.OK);
+    }
+
+    /**
+     * Cambios en vivo (Server-Sent Events). Cada evento user-change tiene como id la versión del cambio,
+     * al reconectarse el navegador envía la cabecera Last-Event-ID y se reciben los cambios pendientes.
+     * El evento resync indica que el cliente se atrasó y debe continuar con /user/changes.
+     */
+    @GetMapping(path = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(required = false) Long since,
+                                    @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId)
+            throws RateLimitExceededException {
+        return this.userChangeFeed.subscribe(lastEventId != null ? lastEventId : since);
+    }
+
+    /**
+     * passwordResetRequired (opcional): ejm. /user/list?passwordResetRequired=true lista los usuarios
+     * importados cuyo correo con el password no se envió, a los que se debe resetear el password
+     */
     @GetMapping("/list")
-    public ResponseEntity<List<User>> getAllUsers() {
-        return new ResponseEntity<>(this.userService.getUsers(), HttpStatus.OK);
+    public ResponseEntity<List<Map<String, Object>>> getAllUsers(@RequestParam(required = false) String fields,
+                                                                 @RequestParam(required = false) Boolean passwordResetRequired)
+            throws InvalidFieldException {
+        return new ResponseEntity<>(this.userService.getUsers(UserField.parse(fields), passwordResetRequired), HttpStatus.OK);
+    }
+
+    /**
+     * Búsqueda por prefijo y aproximada (fuzzy) sobre username, nombres y email.
+     * Ejm. /user/search?q=mar flo&page=0&size=20
+     */
+    @GetMapping("/search")
+    public ResponseEntity<UserSearchResult> searchUsers(@RequestParam String q,
+                                                        @RequestParam(defaultValue = "0") int page,
+                                                        @RequestParam(defaultValue = "20") int size) {
+        int pageSize = Math.max(1, Math.min(size, MAXIMUM_SEARCH_PAGE_SIZE));
+        return new ResponseEntity<>(this.userService.searchUsers(q, Math.max(0, page), pageSize), HttpStatus.OK);
+    }
+
+    /**
+     * Importación masiva de usuarios. El cuerpo de la petición es el archivo completo:
+     * CSV con cabecera (firstName,lastName,username,email,role,active,notLocked) o
+     * NDJSON (un objeto JSON por línea). Se lee como stream, sin cargarlo en memoria.
+     */
+    @PostMapping(path = "/import", consumes = {UserBulkService.CSV_MEDIA_TYPE, UserBulkService.NDJSON_MEDIA_TYPE})
+    @RequiresPermission(UserPermission.USER_CREATE)
+    public ResponseEntity<UserImportResult> importUsers(HttpServletRequest request) throws IOException {
+        UserImportResult result = this.userBulkService.importUsers(request.getInputStream(), request.getContentType());
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Exportación de usuarios en NDJSON (por defecto) o CSV (?format=csv), escrita mientras se lee de la BD.
+     * fields (opcional), igual que en /list
+     */
+    @GetMapping("/export")
+    @RequiresPermission(UserPermission.USER_READ)
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "ndjson") String format,
+                                                             @RequestParam(required = false) String fields)
+            throws InvalidFieldException {
+        Set<UserField> userFields = UserField.parse(fields);
+        boolean csv = "csv".equalsIgnoreCase(format);
+        StreamingResponseBody body = outputStream -> this.userBulkService.exportUsers(outputStream, userFields, csv);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(csv ? UserBulkService.CSV_MEDIA_TYPE : UserBulkService.NDJSON_MEDIA_TYPE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users." + (csv ? "csv" : "ndjson"))
+                .body(body);
     }
 
     @GetMapping("/reset-password/{email}")
     public ResponseEntity<HttpResponse> resetPassword(@PathVariable String email)
-            throws EmailNotFoundException, MessagingException {
+            throws EmailNotFoundException, MessagingException, RateLimitExceededException {
+        this.rateLimitService.checkPasswordReset(email);
         this.userService.resetPassword(email);
         return this.response(HttpStatus.OK, EMAIL_SENT.concat(email));
     }
 
-    //@PreAuthorize, esta anotación es posible gracias a que tenemos configurada @EnableGlobalMethodSecurity(prePostEnabled = true) en el SecurityConfiguration
+    //@RequiresPermission, la verifica el PermissionInterceptor (registrado en el WebMvcConfiguration)
     @DeleteMapping("/delete/{username}")
-    @PreAuthorize("hasAnyAuthority('user:delete')")
+    @RequiresPermission(UserPermission.USER_DELETE)
     public ResponseEntity<HttpResponse> deleteUser(@PathVariable String username)
             throws UserNotFoundException, IOException {
         this.userService.deleteUser(username);
         return this.response(HttpStatus.OK, USER_DELETED_SUCCESSFULLY);
     }
 
+    /**
+     * Desbloquea varias cuentas en una sola petición (un solo UPDATE).
+     * Body, arreglo de usernames: ["user1", "user2"]
+     */
+    @PostMapping("/unlock")
+    @RequiresPermission(UserPermission.USER_UPDATE)
+    public ResponseEntity<HttpResponse> unlockUsers(@RequestBody List<String> usernames) throws InvalidFieldException {
+        if (usernames.size() > MAXIMUM_UNLOCK_USERNAMES) {
+            throw new InvalidFieldException(TOO_MANY_USERNAMES);
+        }
+        int unlocked = this.userService.unlockUsers(usernames);
+        return this.response(HttpStatus.OK, ACCOUNTS_UNLOCKED + unlocked);
+    }
+
     @PostMapping("/update-profile-image")
     public ResponseEntity<User> updateProfileImage(@RequestParam String username, @RequestParam MultipartFile profileImage)
-            throws UserNotFoundException, EmailExistException, IOException, UsernameExistException, NotAnImageFileException {
+            throws UserNotFoundException, EmailExistException, IOException, UsernameExistException, NotAnImageFileException, ImageTooLargeException {
         User user = this.userService.updateProfileImage(username, profileImage);
         return new ResponseEntity<>(user, HttpStatus.OK);
     }
 
+    /**
+     * Carga por streaming: el cuerpo de la petición es la imagen (sin multipart), se lee una sola vez
+     * y se valida mientras se recibe (ver ProfileImageStore). La imagen recibida no se escribe
+     * en la carpeta del usuario hasta validarla por completo.
+     */
+    @PostMapping(path = "/update-profile-image/{username}", consumes = {MediaType.IMAGE_JPEG_VALUE,
+            MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_GIF_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<User> uploadProfileImage(@PathVariable String username, HttpServletRequest request)
+            throws UserNotFoundException, IOException, NotAnImageFileException, ImageTooLargeException {
+        Path receivedImage = this.profileImageStore.receive(request.getInputStream(), request.getContentLengthLong());
+        User user = this.userService.updateProfileImage(username, receivedImage);
+        return new ResponseEntity<>(user, HttpStatus.OK);
+    }
+
+    /**
+     * Miniaturas de varios usuarios en una sola imagen (sprite), para las vistas con listas de usuarios.
+     * Ejm. /user/image/sprite?usernames=user1,user2,user3&size=64
+     * Cada miniatura se muestra con background-position: -x -y (ver AvatarSprite.offsets)
+     * A diferencia del resto de /user/image/** requiere autenticación (ver SecurityConstant.AVATAR_SPRITE_URL)
+     */
+    @GetMapping("/image/sprite")
+    public ResponseEntity<AvatarSprite> getAvatarSprite(@RequestParam List<String> usernames,
+                                                        @RequestParam(defaultValue = "" + AvatarSpriteService.DEFAULT_TILE_SIZE) int size)
+            throws InvalidFieldException, IOException {
+        AvatarSprite sprite = this.avatarSpriteService.createSprite(usernames, size);
+        return ResponseEntity.ok().cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePrivate()).body(sprite);
+    }
+
     @GetMapping(path = "/image/{username}/{filename}", produces = MediaType.IMAGE_JPEG_VALUE)
     public byte[] getProfileImage(@PathVariable String username, @PathVariable String filename) throws IOException {
         return Files.readAllBytes(Paths.get(FileConstant.USER_FOLDER + username + FileConstant.FORWARD_SLASH + filename));
@@ -168,6 +392,26 @@ public class UserResource extends ExceptionHandling {
         return byteArrayOutputStream.toByteArray();
     }
 
+    private String eTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    //Devuelve la versión enviada en el If-Match, o null si no se envió o es "*" (cualquier versión)
+    private Long parseIfMatch(String ifMatch) throws PreconditionFailedException {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        try {
+            return Long.parseLong(value.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException(UserImplConstant.USER_MODIFIED_BY_ANOTHER_REQUEST);
+        }
+    }
+
     private HttpHeaders getJwtHeader(UserPrincipal user) {
         HttpHeaders headers = new HttpHeaders();
         headers.add(SecurityConstant.JWT_TOKEN_HEADER, this.jwtTokenProvider.generateJwtToken(user));
@@ -180,7 +424,14 @@ public class UserResource extends ExceptionHandling {
      * ese método getPrincipal devuelve precisamente ese "username" pasado como argumento
      * que es del tipo String
      */
+    /**
+     * Las cuentas bloqueadas o que superaron el máximo de intentos se rechazan antes de autenticar,
+     * con el estado en caché y sin calcular el BCrypt (ver LoginAttemptService)
+     */
     private void authenticate(String username, String password) {
+        if (username != null && this.loginAttemptService.isLoginBlocked(username)) {
+            throw new LockedException(ACCOUNT_LOCKED);
+        }
         this.authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
     }
 
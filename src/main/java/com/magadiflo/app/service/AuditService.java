@@ -0,0 +1,295 @@
+package com.magadiflo.app.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.magadiflo.app.constant.FileConstant;
+import com.magadiflo.app.domain.AuditEvent;
+import com.magadiflo.app.enumeration.AuditEventType;
+import com.magadiflo.app.enumeration.BackpressurePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline de auditoría asíncrono.
+ * <p>
+ * Los hilos de las peticiones únicamente publican el evento en un buffer acotado
+ * (ArrayBlockingQueue), es decir, no escriben en disco. Un único hilo escritor
+ * (audit-writer) toma los eventos por lotes y los agrega como líneas JSON al
+ * archivo del día correspondiente (audit-yyyy-MM-dd.log), de esa manera los
+ * archivos solo se escriben al final (append-only) y quedan particionados por fecha.
+ * <p>
+ * Si el buffer está lleno se aplica la política configurada (BackpressurePolicy).
+ * <p>
+ * Para consultar los eventos recientes de un usuario se mantiene en memoria
+ * (Guava) los últimos eventos por usuario. Si el usuario no está en la caché
+ * se leen los archivos de los últimos días.
+ */
+@Service
+public class AuditService {
+
+    private static final String ANONYMOUS = "anonymous";
+    private static final int RECENT_EVENTS_PER_USER = 50;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<AuditEvent> buffer;
+    private final int batchSize;
+    private final BackpressurePolicy backpressurePolicy;
+    private final long blockTimeoutMs;
+    private final int queryDays;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final LoadingCache<String, Deque<AuditEvent>> recentEventsCache;
+
+    private volatile boolean running;
+    private Thread writerThread;
+    private BufferedWriter currentWriter;
+    private LocalDate currentDate;
+
+    public AuditService(ObjectMapper objectMapper,
+                        @Value("${audit.buffer-capacity:8192}") int bufferCapacity,
+                        @Value("${audit.batch-size:256}") int batchSize,
+                        @Value("${audit.backpressure-policy:DROP_OLDEST}") BackpressurePolicy backpressurePolicy,
+                        @Value("${audit.block-timeout-ms:5}") long blockTimeoutMs,
+                        @Value("${audit.query-days:2}") int queryDays) {
+        this.objectMapper = objectMapper;
+        this.buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        this.batchSize = batchSize;
+        this.backpressurePolicy = backpressurePolicy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.queryDays = queryDays;
+        this.recentEventsCache = CacheBuilder.newBuilder().expireAfterAccess(30, TimeUnit.MINUTES)
+                .maximumSize(10_000).build(new CacheLoader<String, Deque<AuditEvent>>() {
+                    @Override
+                    public Deque<AuditEvent> load(String username) {
+                        return readRecentEventsFromFiles(username);
+                    }
+                });
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(Paths.get(FileConstant.AUDIT_FOLDER));
+        this.running = true;
+        this.writerThread = new Thread(this::runWriter, "audit-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    //Antes de cerrar la aplicación esperamos a que el escritor persista lo que quedó en el buffer
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        this.running = false;
+        this.writerThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Publica el evento en el buffer. Nunca lanza excepción, en el peor de los
+     * casos el evento se descarta y se contabiliza en droppedEvents.
+     * Dentro de una transacción el evento se publica al confirmarla, si se revierte no se audita.
+     */
+    public void publish(AuditEventType type, String username, String detail) {
+        AuditEvent event = new AuditEvent(type, username, this.currentActor(), detail);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    AuditService.this.enqueue(event);
+                }
+            });
+        } else {
+            this.enqueue(event);
+        }
+    }
+
+    /**
+     * Devuelve los eventos más recientes del usuario, del más nuevo al más antiguo
+     */
+    public List<AuditEvent> getRecentEvents(String username, int limit) {
+        Deque<AuditEvent> events = this.recentEventsCache.getUnchecked(username);
+        List<AuditEvent> result = new ArrayList<>(Math.min(limit, RECENT_EVENTS_PER_USER));
+        synchronized (events) {
+            Iterator<AuditEvent> iterator = events.descendingIterator();
+            while (iterator.hasNext() && result.size() < limit) {
+                result.add(iterator.next());
+            }
+        }
+        return result;
+    }
+
+    public long getDroppedEvents() {
+        return this.droppedEvents.get();
+    }
+
+    private void enqueue(AuditEvent event) {
+        boolean accepted;
+        switch (this.backpressurePolicy) {
+            case DROP_OLDEST:
+                accepted = this.buffer.offer(event);
+                while (!accepted) {
+                    if (this.buffer.poll() != null) {
+                        this.droppedEvents.incrementAndGet();
+                    }
+                    accepted = this.buffer.offer(event);
+                }
+                break;
+            case BLOCK:
+                try {
+                    accepted = this.buffer.offer(event, this.blockTimeoutMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    accepted = false;
+                }
+                break;
+            default:
+                accepted = this.buffer.offer(event);
+        }
+        if (!accepted) {
+            this.droppedEvents.incrementAndGet();
+        }
+    }
+
+    private void runWriter() {
+        List<AuditEvent> batch = new ArrayList<>(this.batchSize);
+        while (this.running || !this.buffer.isEmpty()) {
+            try {
+                AuditEvent first = this.buffer.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.buffer.drainTo(batch, this.batchSize - 1);
+                this.write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+        this.closeCurrentWriter();
+    }
+
+    private void write(List<AuditEvent> batch) {
+        try {
+            for (AuditEvent event : batch) {
+                BufferedWriter writer = this.writerFor(this.partitionOf(event));
+                writer.write(this.objectMapper.writeValueAsString(event));
+                writer.newLine();
+            }
+            this.currentWriter.flush();
+        } catch (IOException e) {
+            this.logger.error("No se pudo escribir {} eventos de auditoría: {}", batch.size(), e.getMessage());
+            return;
+        }
+        //Solo actualizamos la caché de usuarios que ya estén cargados, el resto se leerá de los archivos
+        for (AuditEvent event : batch) {
+            Deque<AuditEvent> events = this.recentEventsCache.getIfPresent(event.getUsername());
+            if (events != null) {
+                this.addRecentEvent(events, event);
+            }
+        }
+    }
+
+    //Un archivo por día. Al cambiar de día se cierra el archivo anterior y se abre el nuevo
+    private BufferedWriter writerFor(LocalDate date) throws IOException {
+        if (!date.equals(this.currentDate)) {
+            if (this.currentWriter != null) {
+                this.currentWriter.flush();
+            }
+            this.closeCurrentWriter();
+            this.currentWriter = Files.newBufferedWriter(this.fileOf(date), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            this.currentDate = date;
+        }
+        return this.currentWriter;
+    }
+
+    private void closeCurrentWriter() {
+        if (this.currentWriter != null) {
+            try {
+                this.currentWriter.close();
+            } catch (IOException e) {
+                this.logger.error(e.getMessage());
+            }
+            this.currentWriter = null;
+            this.currentDate = null;
+        }
+    }
+
+    private Deque<AuditEvent> readRecentEventsFromFiles(String username) {
+        Deque<AuditEvent> events = new ArrayDeque<>(RECENT_EVENTS_PER_USER);
+        LocalDate today = LocalDate.now(ZoneId.systemDefault());
+        for (int day = this.queryDays - 1; day >= 0; day--) {
+            Path file = this.fileOf(today.minusDays(day));
+            if (!Files.exists(file)) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    AuditEvent event = this.objectMapper.readValue(line, AuditEvent.class);
+                    if (username.equals(event.getUsername())) {
+                        this.addRecentEvent(events, event);
+                    }
+                }
+            } catch (IOException e) {
+                this.logger.error("No se pudo leer el archivo de auditoría {}: {}", file, e.getMessage());
+            }
+        }
+        return events;
+    }
+
+    private void addRecentEvent(Deque<AuditEvent> events, AuditEvent event) {
+        synchronized (events) {
+            if (events.size() == RECENT_EVENTS_PER_USER) {
+                events.pollFirst();
+            }
+            events.addLast(event);
+        }
+    }
+
+    private LocalDate partitionOf(AuditEvent event) {
+        return event.getTimeStamp().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private Path fileOf(LocalDate date) {
+        return Paths.get(FileConstant.AUDIT_FOLDER, FileConstant.AUDIT_FILE_PREFIX + date + FileConstant.AUDIT_FILE_EXTENSION);
+    }
+
+    private String currentActor() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? ANONYMOUS : authentication.getName();
+    }
+
+}
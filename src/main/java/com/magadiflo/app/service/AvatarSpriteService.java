@@ -0,0 +1,205 @@
+package com.magadiflo.app.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.magadiflo.app.constant.FileConstant;
+import com.magadiflo.app.domain.AvatarSprite;
+import com.magadiflo.app.exception.domain.InvalidFieldException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Arma el sprite (una sola imagen PNG) con las miniaturas de varios usuarios, así una vista con
+ * la lista de usuarios hace una sola petición en lugar de una por cada imagen de perfil.
+ * <p>
+ * Las miniaturas se guardan en memoria (Guava) por username y tamaño; el peso máximo de la caché
+ * está en bytes (avatar.cache-max-megabytes). Al actualizar la imagen de perfil o eliminar al
+ * usuario se invalida su miniatura. Para no decodificar la imagen completa (hasta 4096x4096),
+ * se lee submuestreada (ImageReadParam.setSourceSubsampling) a un tamaño cercano a la miniatura.
+ * <p>
+ * El sprite ya codificado (PNG) también se guarda en memoria, por tamaño y lista de usernames en el
+ * mismo orden (avatar.sprite-cache-max-megabytes), así las peticiones repetidas de una misma vista
+ * no vuelven a codificar la imagen. Se elimina al invalidar a cualquiera de sus usuarios.
+ * Los usernames inválidos (ejm. con "/") no se buscan y se devuelven como missing.
+ */
+@Service
+public class AvatarSpriteService {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+    public static final int MAXIMUM_USERNAMES = 200;
+    public static final String INVALID_TILE_SIZE = "Invalid size, allowed values: ";
+    public static final String TOO_MANY_USERNAMES = "Too many usernames, the maximum is " + MAXIMUM_USERNAMES;
+
+    //Los tamaños están acotados para que la caché no crezca con un tamaño distinto por petición
+    private static final List<Integer> TILE_SIZES = Collections.unmodifiableList(Arrays.asList(32, 48, 64, 96, 128));
+    private static final int MAXIMUM_COLUMNS = 16;
+    //El username forma parte de la ruta del archivo, no se permiten "/", "\" ni ".."
+    private static final Pattern VALID_USERNAME = Pattern.compile("[A-Za-z0-9_@+-]+(\\.[A-Za-z0-9_@+-]+)*");
+    private static final String PNG = "png";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    //Optional.empty(), el usuario no tiene imagen de perfil (se guarda para no volver a buscar el archivo)
+    private final LoadingCache<String, Optional<BufferedImage>> thumbnails;
+    //[tamaño, username1, username2, ...] -> sprite
+    private final Cache<List<String>, AvatarSprite> sprites;
+
+    public AvatarSpriteService(@Value("${avatar.cache-max-megabytes:64}") long cacheMaxMegabytes,
+                               @Value("${avatar.sprite-cache-max-megabytes:16}") long spriteCacheMaxMegabytes,
+                               @Value("${avatar.cache-expiration-minutes:60}") long cacheExpirationMinutes) {
+        this.thumbnails = CacheBuilder.newBuilder()
+                .maximumWeight(cacheMaxMegabytes * 1024 * 1024)
+                .weigher((String key, Optional<BufferedImage> thumbnail) ->
+                        thumbnail.isPresent() ? thumbnail.get().getWidth() * thumbnail.get().getHeight() * 4 : 64)
+                .expireAfterWrite(cacheExpirationMinutes, TimeUnit.MINUTES)
+                .build(new CacheLoader<String, Optional<BufferedImage>>() {
+                    @Override
+                    public Optional<BufferedImage> load(String key) {
+                        int separator = key.lastIndexOf(':');
+                        return loadThumbnail(key.substring(0, separator), Integer.parseInt(key.substring(separator + 1)));
+                    }
+                });
+        this.sprites = CacheBuilder.newBuilder()
+                .maximumWeight(spriteCacheMaxMegabytes * 1024 * 1024)
+                .weigher((List<String> key, AvatarSprite sprite) -> sprite.getImage().length + key.size() * 64)
+                .expireAfterWrite(cacheExpirationMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * usernames, en el orden en que se mostrarán; los repetidos se ignoran
+     */
+    public AvatarSprite createSprite(List<String> usernames, int tileSize) throws InvalidFieldException, IOException {
+        if (!TILE_SIZES.contains(tileSize)) {
+            throw new InvalidFieldException(INVALID_TILE_SIZE + TILE_SIZES);
+        }
+        Set<String> distinctUsernames = new LinkedHashSet<>(usernames);
+        if (distinctUsernames.size() > MAXIMUM_USERNAMES) {
+            throw new InvalidFieldException(TOO_MANY_USERNAMES);
+        }
+        List<String> key = new ArrayList<>(distinctUsernames.size() + 1);
+        key.add(String.valueOf(tileSize));
+        key.addAll(distinctUsernames);
+        AvatarSprite cached = this.sprites.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        AvatarSprite sprite = this.drawSprite(distinctUsernames, tileSize);
+        this.sprites.put(key, sprite);
+        return sprite;
+    }
+
+    //Al cambiar la imagen de perfil o eliminar al usuario
+    public void invalidate(String username) {
+        for (Integer tileSize : TILE_SIZES) {
+            this.thumbnails.invalidate(username + ":" + tileSize);
+        }
+        this.sprites.asMap().keySet().removeIf(key -> key.subList(1, key.size()).contains(username));
+    }
+
+    private AvatarSprite drawSprite(Set<String> distinctUsernames, int tileSize) throws IOException {
+        int count = Math.max(1, distinctUsernames.size());
+        int columns = Math.min(count, MAXIMUM_COLUMNS);
+        int rows = (count + columns - 1) / columns;
+        BufferedImage sprite = new BufferedImage(columns * tileSize, rows * tileSize, BufferedImage.TYPE_INT_ARGB);
+        Map<String, int[]> offsets = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        Graphics2D graphics = sprite.createGraphics();
+        try {
+            int index = 0;
+            for (String username : distinctUsernames) {
+                int[] offset = {(index % columns) * tileSize, (index / columns) * tileSize};
+                offsets.put(username, offset);
+                Optional<BufferedImage> thumbnail = VALID_USERNAME.matcher(username).matches()
+                        ? this.thumbnails.getUnchecked(username + ":" + tileSize) : Optional.empty();
+                if (thumbnail.isPresent()) {
+                    graphics.drawImage(thumbnail.get(), offset[0], offset[1], null);
+                } else {
+                    missing.add(username);
+                }
+                index++;
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        ImageIO.write(sprite, PNG, image);
+        //Se comparte entre peticiones (caché), por eso no se puede modificar
+        return new AvatarSprite(tileSize, sprite.getWidth(), sprite.getHeight(), Collections.unmodifiableMap(offsets),
+                Collections.unmodifiableList(missing), image.toByteArray());
+    }
+
+    private Optional<BufferedImage> loadThumbnail(String username, int tileSize) {
+        Path imageFile = Paths.get(FileConstant.USER_FOLDER, username, username + FileConstant.DOT + FileConstant.JPG_EXTENSION);
+        if (!Files.exists(imageFile)) {
+            return Optional.empty();
+        }
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(imageFile.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(inputStream, true, true);
+                int side = Math.min(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, side / (tileSize * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return Optional.of(this.toTile(reader.read(0, param), tileSize));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) { //ImageIO lanza RuntimeException con algunas imágenes corruptas
+            this.logger.error("Could not read the profile image of {}: {}", username, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    //Recorta el centro de la imagen (cuadrado) y lo escala al tamaño de la miniatura
+    private BufferedImage toTile(BufferedImage image, int tileSize) {
+        int side = Math.min(image.getWidth(), image.getHeight());
+        int x = (image.getWidth() - side) / 2;
+        int y = (image.getHeight() - side) / 2;
+        BufferedImage tile = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = tile.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, tileSize, tileSize, x, y, x + side, y + side, null);
+        } finally {
+            graphics.dispose();
+        }
+        return tile;
+    }
+
+}
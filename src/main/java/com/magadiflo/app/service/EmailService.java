@@ -1,10 +1,14 @@
 package com.magadiflo.app.service;
 
 import com.sun.mail.smtp.SMTPTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import static com.magadiflo.app.constant.EmailConstant.*;
 
+import javax.annotation.PreDestroy;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
@@ -12,10 +16,74 @@ import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class EmailService {
 
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    //Un solo hilo envía los correos encolados, así no superamos el límite de conexiones del servidor SMTP
+    private final ExecutorService emailQueue;
+
+    public EmailService(@Value("${email.queue-capacity:1000}") int queueCapacity,
+                        @Value("${email.queue-wait-seconds:60}") long queueWaitSeconds) {
+        //Si la cola está llena, quien encola espera a que se libere un lugar (hasta queueWaitSeconds)
+        this.emailQueue = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "email-queue");
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, executor) -> {
+            try {
+                if (executor.isShutdown() || !executor.getQueue().offer(runnable, queueWaitSeconds, TimeUnit.SECONDS)) {
+                    throw new RejectedExecutionException("Email queue is full");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+    }
+
+    //Los correos aún encolados no se envían, sus usuarios quedan con passwordResetRequired
+    @PreDestroy
+    public void shutdown() {
+        int pending = this.emailQueue.shutdownNow().size();
+        if (pending > 0) {
+            this.logger.warn("{} queued new password emails were not sent", pending);
+        }
+    }
+
+    /**
+     * Encola el correo para enviarlo en segundo plano (usado por la importación masiva).
+     * La cola es pequeña (email.queue-capacity) porque los passwords están en memoria en texto plano:
+     * si está llena, se espera hasta email.queue-wait-seconds a que el hilo de envío libere un lugar.
+     * Devuelve false si no se pudo encolar. Si el envío falla o la aplicación se detiene, el correo no se
+     * envía y solo se registra en el log. onSent se ejecuta (en el hilo de la cola) solo si se envió.
+     */
+    public boolean queueNewPasswordEmail(String firstName, String password, String email, Runnable onSent) {
+        try {
+            this.emailQueue.execute(() -> {
+                try {
+                    this.sendNewPasswordEmail(firstName, password, email);
+                } catch (MessagingException e) {
+                    this.logger.error("Could not send the new password email to {}: {}", email, e.getMessage());
+                    return;
+                }
+                onSent.run();
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            this.logger.error("Email queue is full, the new password email to {} was not sent", email);
+            return false;
+        }
+    }
+
     public void sendNewPasswordEmail(String firstName, String password, String email) throws MessagingException {
         Message message = this.createEmail(firstName, password, email);
         SMTPTransport smtpTransport = (SMTPTransport) this.getEmailSession().getTransport(SIMPLE_MAIL_TRANSFER_PROTOCOL);
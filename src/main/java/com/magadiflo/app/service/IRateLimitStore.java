@@ -0,0 +1,19 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.enumeration.RateLimit;
+
+/**
+ * Almacén de los token buckets. La implementación en memoria limita por nodo; para
+ * límites compartidos por todo el clúster se puede implementar sobre un almacén común
+ * (ejm. Redis) y registrarla como bean en su lugar.
+ */
+public interface IRateLimitStore {
+
+    /**
+     * Intenta consumir un token del bucket identificado por key.
+     *
+     * @return 0 si se consumió, o los milisegundos que faltan para que haya un token disponible
+     */
+    long tryConsume(String key, RateLimit rateLimit);
+
+}
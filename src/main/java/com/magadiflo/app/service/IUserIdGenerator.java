@@ -0,0 +1,11 @@
+package com.magadiflo.app.service;
+
+/**
+ * Genera el userId (identificador público) de los usuarios nuevos.
+ * Los valores generados deben ser únicos sin necesidad de consultar la BD.
+ */
+public interface IUserIdGenerator {
+
+    String generateUserId();
+
+}
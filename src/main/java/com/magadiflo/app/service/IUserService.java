@@ -1,33 +1,74 @@
 package com.magadiflo.app.service;
 
 import com.magadiflo.app.domain.User;
+import com.magadiflo.app.domain.UserChangeSet;
+import com.magadiflo.app.domain.UserSearchResult;
+import com.magadiflo.app.enumeration.UserField;
 import com.magadiflo.app.exception.domain.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.mail.MessagingException;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface IUserService {
 
     User register(String firstName, String lastName, String username, String email)
             throws UserNotFoundException, EmailExistException, UsernameExistException, MessagingException;
 
-    List<User> getUsers();
+    //passwordResetRequired: solo los usuarios con ese valor, null para todos
+    List<Map<String, Object>> getUsers(Set<UserField> fields, Boolean passwordResetRequired);
 
     User findUserByUsername(String username);
 
+    Map<String, Object> findUserByUsername(String username, Set<UserField> fields);
+
+    /**
+     * Busca varios usuarios con una sola consulta. keyField: USERNAME o USER_ID.
+     * Devuelve un mapa identificador -> usuario en el orden de identifiers (sin repetidos),
+     * con valor null para los identificadores que no existen.
+     */
+    Map<String, Map<String, Object>> findUsers(UserField keyField, List<String> identifiers, Set<UserField> fields);
+
+    /**
+     * Cambios posteriores a since junto con el estado actual de los usuarios que cambiaron (ver UserChangeFeed)
+     */
+    UserChangeSet getChanges(Long since, int limit, Set<UserField> fields);
+
     User findUserByEmail(String email);
 
+    UserSearchResult searchUsers(String query, int page, int size);
+
     User addNewUser(String firstName, String lastName, String username, String email, String role, boolean isNotLocked,
-                    boolean isActive, MultipartFile profileImage) throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException;
+                    boolean isActive, MultipartFile profileImage) throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException, ImageTooLargeException;
 
+    /**
+     * expectedVersion, versión que el cliente leyó (If-Match), null para no validarla
+     */
     User updateUser(String currentUsername, String newFirstName, String newLastName, String newUsername, String newEmail,
-                    String role, boolean isNotLocked, boolean isActive, MultipartFile profileImage) throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException;
+                    String role, boolean isNotLocked, boolean isActive, MultipartFile profileImage, Long expectedVersion) throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException, ImageTooLargeException, PreconditionFailedException;
+
+    /**
+     * Actualiza solo los campos enviados en changes (nombre del campo en el JSON -> nuevo valor)
+     */
+    User patchUser(String username, Map<String, Object> changes, Long expectedVersion) throws UserNotFoundException, EmailExistException, UsernameExistException, InvalidFieldException, PreconditionFailedException;
 
     void deleteUser(String username) throws UserNotFoundException, IOException;
 
+    /**
+     * Desbloquea las cuentas indicadas con un solo UPDATE, devuelve cuántas estaban bloqueadas
+     */
+    int unlockUsers(List<String> usernames);
+
     void resetPassword(String email) throws EmailNotFoundException, MessagingException;
 
-    User updateProfileImage(String username, MultipartFile profileImage) throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException;
+    /**
+     * receivedImage, imagen ya validada por el ProfileImageStore (carga por streaming)
+     */
+    User updateProfileImage(String username, Path receivedImage) throws UserNotFoundException, IOException;
+
+    User updateProfileImage(String username, MultipartFile profileImage) throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException, ImageTooLargeException;
 }
@@ -3,10 +3,29 @@ package com.magadiflo.app.service;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.magadiflo.app.enumeration.UserChangeType;
+import com.magadiflo.app.repository.IUserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.concurrent.ExecutionException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Almacenará en la caché el número de intentos fallidos
@@ -23,26 +42,79 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * Configuración usando librería guava de google
  * <a href="https://github.com/google/guava/wiki/CachesExplained">Google/Guava</a>
+ * <p>
+ * Además, se mantiene en una caché el estado de bloqueo de cada username (notLocked y lockedUntil).
+ * La BD es la fuente de verdad: cada entrada se lee de la BD y vence a los
+ * login-lock.cache-ttl-seconds, así los desbloqueos hechos en otra instancia (o por el UPDATE de
+ * los bloqueos vencidos) se ven a más tardar en ese tiempo. En esta instancia la entrada se
+ * actualiza al bloquear, desbloquear, renombrar o eliminar usuarios (después del commit).
+ * Con isLoginBlocked() el login rechaza a los usuarios bloqueados o que superaron los intentos
+ * antes de llegar al AuthenticationManager, es decir, sin calcular el BCrypt.
+ * <p>
+ * Al llegar al máximo de intentos la cuenta se bloquea por login-lock.duration-minutes.
+ * Cada login-lock.unlock-interval-ms un solo UPDATE desbloquea todas las cuentas cuyo bloqueo
+ * venció. Los bloqueos de un administrador (lockedUntil = null) no vencen.
+ * <p>
+ * Métricas: login.locked.accounts (bloqueos vigentes en la BD, se cuentan en cada unlockExpiredAccounts) y login.accounts.unlocked (desbloqueos,
+ * por vencimiento o manuales).
  */
 
 @Service
-public class LoginAttemptService {
+public class LoginAttemptService implements SmartInitializingSingleton {
 
     private static final int MAXIMUM_NUMBER_OF_ATTEMPTS = 5;
     private static final int ATTEMPT_INCREMENT = 1;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final long LOCKED_INDEFINITELY = Long.MAX_VALUE;
+    private static final long NOT_LOCKED = 0;
+
+    private final IUserRepository userRepository;
+    private final UserChangeFeed userChangeFeed;
+    //username -> vencimiento del bloqueo en milisegundos (NOT_LOCKED o LOCKED_INDEFINITELY si no vence)
+    private final LoadingCache<String, Long> lockedUntilCache;
+    private final AtomicLong lockedAccounts = new AtomicLong();
+    private final Duration lockDuration;
+    private final Counter expiredUnlockCounter;
+    private final Counter manualUnlockCounter;
     private LoadingCache<String, Integer> loginAttemptCache;
 
     //Inicializando la Caché dentro del constructor
-    //maximumSize(100), tendremos 100 entradas en la caché como máximo
-    public LoginAttemptService() {
+    //maximumSize(10_000), tendremos 10 000 entradas en la caché como máximo. Con pocas entradas, un ataque
+    //que prueba muchos usernames desalojaría los intentos de los demás antes de llegar al máximo
+    public LoginAttemptService(IUserRepository userRepository, UserChangeFeed userChangeFeed, MeterRegistry meterRegistry,
+                               @Value("${login-lock.duration-minutes:30}") long lockDurationMinutes,
+                               @Value("${login-lock.cache-ttl-seconds:30}") long lockCacheTtlSeconds) {
         super();
+        this.userRepository = userRepository;
+        this.userChangeFeed = userChangeFeed;
+        this.lockDuration = Duration.ofMinutes(lockDurationMinutes);
+        Gauge.builder("login.locked.accounts", this.lockedAccounts, AtomicLong::get)
+                .description("Accounts currently locked").register(meterRegistry);
+        this.expiredUnlockCounter = Counter.builder("login.accounts.unlocked").tag("reason", "expired").register(meterRegistry);
+        this.manualUnlockCounter = Counter.builder("login.accounts.unlocked").tag("reason", "manual").register(meterRegistry);
         this.loginAttemptCache = CacheBuilder.newBuilder().expireAfterWrite(15, TimeUnit.MINUTES)
-                .maximumSize(100).build(new CacheLoader<String, Integer>() {
+                .maximumSize(10_000).build(new CacheLoader<String, Integer>() {
                     @Override
                     public Integer load(String key) throws Exception {
                         return 0;
                     }
                 });
+        //También se guardan los usuarios no bloqueados (NOT_LOCKED), así un login normal no consulta la BD en cada intento
+        this.lockedUntilCache = CacheBuilder.newBuilder().expireAfterWrite(lockCacheTtlSeconds, TimeUnit.SECONDS)
+                .maximumSize(10_000).build(new CacheLoader<String, Long>() {
+                    @Override
+                    public Long load(String username) {
+                        return findLockedUntil(username);
+                    }
+                });
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        this.lockedAccounts.set(this.userRepository.countLocked(Instant.now()));
+        this.logger.info("{} locked users", this.lockedAccounts.get());
     }
 
     //Desalojar al usuario de la caché de intento de inicio de sesión
@@ -51,23 +123,146 @@ public class LoginAttemptService {
         this.loginAttemptCache.invalidate(username);//Buscará una key con el "username" y lo eliminará junto a su valor
     }
 
-    public void addUserToLoginAttemptCache(String username) {
-        int attempts = 0;
-        try {
-            attempts = ATTEMPT_INCREMENT + this.loginAttemptCache.get(username);
-        } catch (ExecutionException e) {
-            e.printStackTrace();
-        }
-        this.loginAttemptCache.put(username, attempts);
+    /**
+     * Devuelve true si con este intento el usuario llegó al máximo de intentos.
+     * merge(), incrementa de forma atómica aunque lleguen varios intentos a la vez
+     */
+    public boolean addUserToLoginAttemptCache(String username) {
+        Integer attempts = this.loginAttemptCache.asMap().merge(username, ATTEMPT_INCREMENT, Integer::sum);
+        return attempts >= MAXIMUM_NUMBER_OF_ATTEMPTS;
     }
 
+    //getIfPresent(), así consultar un username no crea una entrada en la caché
     public boolean hasExceededMaxAttempts(String username) {
+        Integer attempts = this.loginAttemptCache.getIfPresent(username);
+        return attempts != null && attempts >= MAXIMUM_NUMBER_OF_ATTEMPTS;
+    }
+
+    /**
+     * Verificación previa al login. Si la BD no responde no se rechaza el login,
+     * el AuthenticationManager vuelve a verificar el bloqueo con el usuario que lea de la BD
+     */
+    public boolean isLoginBlocked(String username) {
+        if (this.hasExceededMaxAttempts(username)) {
+            return true;
+        }
         try {
-            return this.loginAttemptCache.get(username) >= MAXIMUM_NUMBER_OF_ATTEMPTS;
-        } catch (ExecutionException e) {
-            e.printStackTrace();
+            return this.lockedUntilCache.getUnchecked(username) > System.currentTimeMillis();
+        } catch (UncheckedExecutionException e) {
+            this.logger.error("Could not read the lock state of {}: {}", username, e.getMessage());
+            return false;
+        }
+    }
+
+    //Vencimiento de un bloqueo que empieza ahora
+    public Instant newLockExpiration() {
+        return Instant.now().plus(this.lockDuration);
+    }
+
+    /**
+     * Bloquea la cuenta en la BD hasta newLockExpiration() (un solo UPDATE, sin leer el usuario).
+     * Devuelve false si el usuario no existe o ya estaba bloqueado.
+     * Los intentos se reinician, así al vencer el bloqueo el usuario vuelve a tener todos sus intentos.
+     */
+    @Transactional
+    public boolean lockAccount(String username) {
+        Instant lockedUntil = this.newLockExpiration();
+        boolean locked = this.userRepository.lockUser(username, lockedUntil) > 0;
+        if (locked) {
+            this.userChangeFeed.recordAll(UserChangeType.LOCKED, Collections.singleton(username));
+            this.afterCommit(() -> {
+                this.lockedUntilCache.put(username, lockedUntil.toEpochMilli());
+                this.evictUserFromLoginAttemptCache(username);
+            });
+        }
+        return locked;
+    }
+
+    /**
+     * Actualiza la caché con el estado guardado en la BD. Si la cuenta
+     * se desbloquea también se reinician sus intentos fallidos.
+     * lockedUntil, null si el bloqueo no vence
+     */
+    public void setAccountLocked(String username, boolean locked, Instant lockedUntil) {
+        this.afterCommit(() -> {
+            if (locked) {
+                this.lockedUntilCache.put(username, this.toMillis(lockedUntil));
+            } else {
+                this.lockedUntilCache.put(username, NOT_LOCKED);
+                this.evictUserFromLoginAttemptCache(username);
+            }
+        });
+    }
+
+    /**
+     * Desbloquea varias cuentas con un solo UPDATE (debe llamarse dentro de una transacción).
+     * Devuelve el número de cuentas que estaban bloqueadas.
+     */
+    public int unlockAccounts(Collection<String> usernames) {
+        int unlocked = this.userRepository.unlockUsers(usernames);
+        this.afterCommit(() -> {
+            for (String username : usernames) {
+                this.lockedUntilCache.invalidate(username);
+                this.evictUserFromLoginAttemptCache(username);
+            }
+            this.manualUnlockCounter.increment(unlocked);
+        });
+        return unlocked;
+    }
+
+    //Al eliminar o renombrar un usuario
+    public void removeUser(String username) {
+        this.afterCommit(() -> {
+            this.lockedUntilCache.invalidate(username);
+            this.evictUserFromLoginAttemptCache(username);
+        });
+    }
+
+    /**
+     * Desbloquea en la BD todas las cuentas cuyo bloqueo venció. Si hay varias instancias de la
+     * aplicación todas lo ejecutan, pero el UPDATE solo afecta a las cuentas aún bloqueadas.
+     * Los desbloqueos se registran en el UserChangeFeed en la misma transacción que el UPDATE.
+     */
+    @Scheduled(fixedDelayString = "${login-lock.unlock-interval-ms:60000}")
+    @Transactional
+    public void unlockExpiredAccounts() {
+        Instant now = Instant.now();
+        this.userChangeFeed.recordExpiredUnlocks(now);
+        int unlocked = this.userRepository.unlockExpired(now);
+        long nowMillis = now.toEpochMilli();
+        this.lockedUntilCache.asMap().values().removeIf(lockedUntil -> lockedUntil != NOT_LOCKED && lockedUntil <= nowMillis);
+        this.lockedAccounts.set(this.userRepository.countLocked(now));
+        if (unlocked > 0) {
+            this.expiredUnlockCounter.increment(unlocked);
+            this.logger.info("Unlocked {} accounts whose lock expired", unlocked);
+        }
+    }
+
+    //Un usuario inexistente se guarda como NOT_LOCKED, el login lo rechazará al no encontrarlo
+    private long findLockedUntil(String username) {
+        List<Object[]> lockState = this.userRepository.findLockState(username);
+        if (lockState.isEmpty() || (Boolean) lockState.get(0)[0]) {
+            return NOT_LOCKED;
+        }
+        return this.toMillis((Instant) lockState.get(0)[1]);
+    }
+
+    private long toMillis(Instant lockedUntil) {
+        return lockedUntil == null ? LOCKED_INDEFINITELY : lockedUntil.toEpochMilli();
+    }
+
+    //Si hay una transacción activa, el cambio se aplica solo si se confirma
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
         }
-        return false;
     }
 
 }
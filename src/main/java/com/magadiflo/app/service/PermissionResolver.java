@@ -0,0 +1,110 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.domain.Permission;
+import com.magadiflo.app.domain.UserRole;
+import com.magadiflo.app.enumeration.UserPermission;
+import com.magadiflo.app.migration.AuthoritiesMigration;
+import com.magadiflo.app.repository.IRoleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resuelve los permisos (authorities) de un usuario a partir de su rol.
+ * <p>
+ * Los roles y permisos se leen de la BD una sola vez (al iniciar la aplicación
+ * o al llamar a refresh()) y se guardan en memoria en un mapa inmutable
+ * rol -> (String[], máscara de bits), por lo que resolver los permisos de un usuario
+ * no requiere ninguna consulta a la BD y la máscara del token no se recalcula en cada login.
+ * <p>
+ * afterSingletonsInstantiated() se ejecuta cuando ya se crearon todos los beans,
+ * pero antes de que el servidor empiece a recibir peticiones.
+ */
+@Service
+public class PermissionResolver implements SmartInitializingSingleton {
+
+    private static final RolePermissions NO_PERMISSIONS = new RolePermissions(new String[0]);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IRoleRepository roleRepository;
+    private final AuthoritiesMigration authoritiesMigration;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Map<String, RolePermissions> permissionsByRole = Collections.emptyMap();
+
+    public PermissionResolver(IRoleRepository roleRepository, AuthoritiesMigration authoritiesMigration,
+                              TransactionTemplate transactionTemplate) {
+        this.roleRepository = roleRepository;
+        this.authoritiesMigration = authoritiesMigration;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        this.authoritiesMigration.migrate();
+        this.refresh();
+    }
+
+    public void refresh() {
+        Map<String, RolePermissions> permissions = this.transactionTemplate.execute(status -> {
+            List<UserRole> roles = this.roleRepository.findAllWithPermissions();
+            Map<String, RolePermissions> result = new HashMap<>(roles.size() * 2);
+            for (UserRole role : roles) {
+                String[] authorities = role.getPermissions().stream().map(Permission::getName).sorted().toArray(String[]::new);
+                this.warnUnknownPermissions(role.getName(), authorities);
+                result.put(role.getName(), new RolePermissions(authorities));
+            }
+            return result;
+        });
+        this.permissionsByRole = Collections.unmodifiableMap(permissions);
+        this.logger.info("Loaded permissions for {} roles", this.permissionsByRole.size());
+    }
+
+    /**
+     * El arreglo devuelto es compartido entre todos los usuarios del mismo rol, no se debe modificar
+     */
+    public String[] getAuthorities(String role) {
+        return this.getRolePermissions(role).authorities;
+    }
+
+    //Permisos del rol como máscara de bits (claim perms del token, ver UserPermission)
+    public long getPermissionMask(String role) {
+        return this.getRolePermissions(role).mask;
+    }
+
+    private RolePermissions getRolePermissions(String role) {
+        RolePermissions permissions = role == null ? null : this.permissionsByRole.get(role);
+        return permissions == null ? NO_PERMISSIONS : permissions;
+    }
+
+    //Un permiso de la BD que no existe en UserPermission no viaja en el token (claim perms)
+    private void warnUnknownPermissions(String role, String[] authorities) {
+        for (String authority : authorities) {
+            if (UserPermission.fromAuthority(authority) == null) {
+                this.logger.warn("Permission {} of role {} is not defined in UserPermission", authority, role);
+            }
+        }
+    }
+
+    //Ambos valores se calculan juntos en refresh(), así siempre corresponden al mismo rol
+    private static final class RolePermissions {
+
+        private final String[] authorities;
+        private final long mask;
+
+        private RolePermissions(String[] authorities) {
+            this.authorities = authorities;
+            this.mask = UserPermission.toMask(authorities);
+        }
+
+    }
+
+}
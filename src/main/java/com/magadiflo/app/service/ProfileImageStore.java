@@ -0,0 +1,225 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.constant.FileConstant;
+import com.magadiflo.app.exception.domain.ImageTooLargeException;
+import com.magadiflo.app.exception.domain.NotAnImageFileException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Recibe las imágenes de perfil leyendo el stream una sola vez, sin cargarlo en memoria.
+ * <p>
+ * 1) Lee solo la cabecera y detecta el tipo real por sus primeros bytes (magic bytes: JPEG, PNG o GIF),
+ * sin confiar en el Content-Type que envía el cliente, y obtiene el ancho y alto de la imagen.
+ * Si no es una imagen o sus dimensiones superan profile-image.max-width / max-height se rechaza
+ * después de leer unos pocos bytes (a lo sumo HEADER_LIMIT en un JPEG).
+ * 2) Copia el resto del stream a un archivo temporal en FileConstant.UPLOAD_FOLDER, contando los bytes;
+ * al superar profile-image.max-size se detiene y elimina el archivo.
+ * 3) moveToUserFolder() reemplaza la imagen del usuario con un rename atómico (mismo disco),
+ * así nunca se sirve una imagen a medio escribir.
+ */
+@Service
+public class ProfileImageStore {
+
+    public static final String NOT_AN_IMAGE = "The file is not a JPEG, PNG or GIF image";
+    public static final String IMAGE_TOO_LARGE = "The image exceeds the maximum size of %d bytes";
+    public static final String IMAGE_DIMENSIONS_TOO_LARGE = "The image exceeds the maximum dimensions of %dx%d pixels";
+
+    //Un JPEG puede tener metadatos (EXIF, ICC) antes del marcador SOF con las dimensiones
+    private static final int HEADER_LIMIT = 64 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final long maxBytes;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final Path uploadFolder = Paths.get(FileConstant.UPLOAD_FOLDER).toAbsolutePath().normalize();
+
+    public ProfileImageStore(@Value("${profile-image.max-size:2MB}") DataSize maxSize,
+                             @Value("${profile-image.max-width:4096}") int maxWidth,
+                             @Value("${profile-image.max-height:4096}") int maxHeight) {
+        this.maxBytes = maxSize.toBytes();
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+    }
+
+    /**
+     * Valida la imagen y la guarda en un archivo temporal, que se debe pasar a moveToUserFolder()
+     * o a discard().
+     * contentLength, tamaño declarado por el cliente (-1 si no se conoce), permite rechazar
+     * la imagen sin leer nada
+     */
+    public Path receive(InputStream inputStream, long contentLength)
+            throws IOException, NotAnImageFileException, ImageTooLargeException {
+        if (contentLength > this.maxBytes) {
+            throw new ImageTooLargeException(String.format(IMAGE_TOO_LARGE, this.maxBytes));
+        }
+        Header header = new Header(inputStream);
+        this.validateDimensions(header);
+
+        Files.createDirectories(this.uploadFolder);
+        Path temporaryFile = Files.createTempFile(this.uploadFolder, "upload-", ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+            long total = header.length;
+            if (total > this.maxBytes) {
+                throw new ImageTooLargeException(String.format(IMAGE_TOO_LARGE, this.maxBytes));
+            }
+            outputStream.write(header.bytes, 0, header.length);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                total += read;
+                if (total > this.maxBytes) {
+                    throw new ImageTooLargeException(String.format(IMAGE_TOO_LARGE, this.maxBytes));
+                }
+                outputStream.write(buffer, 0, read);
+            }
+        } catch (IOException | ImageTooLargeException | RuntimeException e) {
+            this.discard(temporaryFile);
+            throw e;
+        }
+        return temporaryFile;
+    }
+
+    //Reemplaza la imagen del usuario por la imagen recibida
+    public void moveToUserFolder(Path receivedImage, String username) throws IOException {
+        Path userFolder = Paths.get(FileConstant.USER_FOLDER.concat(username)).toAbsolutePath().normalize();
+        if (!Files.exists(userFolder)) {
+            Files.createDirectories(userFolder);
+            this.logger.info(FileConstant.DIRECTORY_CREATED.concat(String.valueOf(userFolder)));
+        }
+        Files.move(receivedImage, userFolder.resolve(username + FileConstant.DOT + FileConstant.JPG_EXTENSION),
+                ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    public void discard(Path receivedImage) {
+        try {
+            Files.deleteIfExists(receivedImage);
+        } catch (IOException e) {
+            this.logger.error("Could not delete the temporary file {}: {}", receivedImage, e.getMessage());
+        }
+    }
+
+    private void validateDimensions(Header header) throws IOException, NotAnImageFileException, ImageTooLargeException {
+        int[] dimensions;
+        if (header.startsWith(0xFF, 0xD8, 0xFF)) {
+            dimensions = this.jpegDimensions(header);
+        } else if (header.startsWith(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            //El primer chunk es IHDR: ancho y alto (big endian) en los bytes 16 a 23
+            dimensions = header.ensure(24) ? new int[]{header.int32(16), header.int32(20)} : null;
+        } else if (header.startsWith('G', 'I', 'F', '8') && header.ensure(10)) {
+            //Logical screen descriptor: ancho y alto (little endian) en los bytes 6 a 9
+            dimensions = new int[]{header.uint16LittleEndian(6), header.uint16LittleEndian(8)};
+        } else {
+            dimensions = null;
+        }
+        if (dimensions == null || dimensions[0] <= 0 || dimensions[1] <= 0) {
+            throw new NotAnImageFileException(NOT_AN_IMAGE);
+        }
+        if (dimensions[0] > this.maxWidth || dimensions[1] > this.maxHeight) {
+            throw new ImageTooLargeException(String.format(IMAGE_DIMENSIONS_TOO_LARGE, this.maxWidth, this.maxHeight));
+        }
+    }
+
+    /**
+     * Recorre los segmentos del JPEG (0xFF, marcador, longitud) hasta el marcador SOF
+     * (Start Of Frame), que contiene el alto y el ancho. Devuelve null si no lo encuentra
+     * dentro de los primeros HEADER_LIMIT bytes.
+     */
+    private int[] jpegDimensions(Header header) throws IOException {
+        int position = 2;
+        while (header.ensure(position + 4)) {
+            if (header.uint8(position) != 0xFF) {
+                return null;
+            }
+            int marker = header.uint8(position + 1);
+            if (marker == 0xFF) { //Bytes de relleno
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) { //Marcadores sin longitud
+                position += 2;
+                continue;
+            }
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame) {
+                //longitud (2), precisión (1), alto (2), ancho (2)
+                return header.ensure(position + 9) ?
+                        new int[]{header.uint16(position + 7), header.uint16(position + 5)} : null;
+            }
+            position += 2 + header.uint16(position + 2);
+        }
+        return null;
+    }
+
+    //Primeros bytes del stream, se leen solo los necesarios (hasta HEADER_LIMIT)
+    private static final class Header {
+
+        private final InputStream inputStream;
+        private final byte[] bytes = new byte[HEADER_LIMIT];
+        private int length;
+
+        private Header(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        //false si el stream termina antes o si se necesitan más de HEADER_LIMIT bytes
+        private boolean ensure(int size) throws IOException {
+            if (size > this.bytes.length) {
+                return false;
+            }
+            while (this.length < size) {
+                int read = this.inputStream.read(this.bytes, this.length, size - this.length);
+                if (read == -1) {
+                    return false;
+                }
+                this.length += read;
+            }
+            return true;
+        }
+
+        private boolean startsWith(int... signature) throws IOException {
+            if (!this.ensure(signature.length)) {
+                return false;
+            }
+            for (int i = 0; i < signature.length; i++) {
+                if (this.uint8(i) != signature[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int uint8(int position) {
+            return this.bytes[position] & 0xFF;
+        }
+
+        private int uint16(int position) {
+            return (this.uint8(position) << 8) | this.uint8(position + 1);
+        }
+
+        private int uint16LittleEndian(int position) {
+            return this.uint8(position) | (this.uint8(position + 1) << 8);
+        }
+
+        private int int32(int position) {
+            return (this.uint16(position) << 16) | this.uint16(position + 2);
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.enumeration.RateLimit;
+import com.magadiflo.app.exception.domain.RateLimitExceededException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+
+/**
+ * Aplica los límites de peticiones (ver RateLimit) sobre el IRateLimitStore.
+ * Los límites por IP y globales se aplican en el RateLimitFilter; los límites por
+ * username o email se aplican en el UserResource, ya que esos valores vienen en la petición.
+ */
+@Service
+public class RateLimitService {
+
+    public static final String TOO_MANY_REQUESTS = "Too many requests. Please try again later";
+
+    private final IRateLimitStore rateLimitStore;
+    private final boolean enabled;
+
+    public RateLimitService(IRateLimitStore rateLimitStore, @Value("${rate-limit.enabled:true}") boolean enabled) {
+        this.rateLimitStore = rateLimitStore;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return 0 si la petición puede continuar, o los segundos que debe esperar el cliente (Retry-After)
+     */
+    public long tryConsume(RateLimit rateLimit, String key) {
+        if (!this.enabled) {
+            return 0;
+        }
+        long waitMillis = this.rateLimitStore.tryConsume(rateLimit.name() + ":" + key, rateLimit);
+        return waitMillis == 0 ? 0 : Math.max(1, (waitMillis + 999) / 1000);
+    }
+
+    public void checkLogin(String username) throws RateLimitExceededException {
+        this.check(RateLimit.LOGIN_PER_USERNAME, username);
+    }
+
+    public void checkPasswordReset(String email) throws RateLimitExceededException {
+        this.check(RateLimit.PASSWORD_RESET_PER_EMAIL, email);
+    }
+
+    private void check(RateLimit rateLimit, String key) throws RateLimitExceededException {
+        if (key == null) {
+            return;
+        }
+        long retryAfterSeconds = this.tryConsume(rateLimit, key.toLowerCase(Locale.ROOT));
+        if (retryAfterSeconds > 0) {
+            throw new RateLimitExceededException(TOO_MANY_REQUESTS, retryAfterSeconds);
+        }
+    }
+
+}
@@ -0,0 +1,389 @@
+package com.magadiflo.app.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.magadiflo.app.constant.FileConstant;
+import com.magadiflo.app.domain.User;
+import com.magadiflo.app.domain.UserImportResult;
+import com.magadiflo.app.domain.UserImportRow;
+import com.magadiflo.app.enumeration.AuditEventType;
+import com.magadiflo.app.enumeration.Role;
+import com.magadiflo.app.enumeration.UserChangeType;
+import com.magadiflo.app.enumeration.UserField;
+import com.magadiflo.app.repository.IUserProjectionRepository;
+import com.magadiflo.app.repository.IUserRepository;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importación y exportación masiva de usuarios.
+ * <p>
+ * Importación: el archivo (CSV o NDJSON) se lee como stream, línea por línea,
+ * y se procesa por lotes de bulk.chunk-size usuarios. Por cada lote:
+ * 1) La unicidad del username y email se valida con dos consultas IN para todo el lote.
+ * 2) Los passwords se encriptan (BCrypt) en paralelo en un pool de hilos acotado.
+ * 3) Los usuarios se insertan en una transacción con JDBC batching (hibernate.jdbc.batch_size),
+ * junto con sus cambios (UserChangeFeed) en un solo INSERT ... SELECT.
+ * 4) Los correos con los passwords se encolan en el EmailService; si la cola está llena, la importación
+ * espera a que se libere un lugar. Los usuarios se insertan con passwordResetRequired = true, que se cambia
+ * a false al enviar el correo; así un correo que no se pudo enviar (no se encoló, error o reinicio) queda
+ * visible (/user/list?passwordResetRequired=true) para que un administrador resetee el password.
+ * El resultado indica cuántos correos no se pudieron encolar.
+ * <p>
+ * Exportación: se recorren los usuarios por id (keyset) y se escriben mientras se leen,
+ * seleccionando solo las columnas solicitadas.
+ */
+@Service
+public class UserBulkService {
+
+    public static final String CSV_MEDIA_TYPE = "text/csv";
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final String CSV_SEPARATOR = ",";
+    private static final String AUTHORITIES_SEPARATOR = "|";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IUserRepository userRepository;
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final EmailService emailService;
+    private final AuditService auditService;
+    private final UserSearchIndex userSearchIndex;
+    private final LoginAttemptService loginAttemptService;
+    private final PermissionResolver permissionResolver;
+    private final IUserIdGenerator userIdGenerator;
+    private final TransactionTemplate transactionTemplate;
+    private final UserChangeFeed userChangeFeed;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final ExecutorService hashingPool;
+
+    public UserBulkService(IUserRepository userRepository, BCryptPasswordEncoder passwordEncoder,
+                           EmailService emailService, AuditService auditService, UserSearchIndex userSearchIndex,
+                           LoginAttemptService loginAttemptService, PermissionResolver permissionResolver, IUserIdGenerator userIdGenerator, TransactionTemplate transactionTemplate,
+                           UserChangeFeed userChangeFeed, ObjectMapper objectMapper, @Value("${bulk.chunk-size:500}") int chunkSize) {
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.emailService = emailService;
+        this.auditService = auditService;
+        this.userSearchIndex = userSearchIndex;
+        this.loginAttemptService = loginAttemptService;
+        this.permissionResolver = permissionResolver;
+        this.userIdGenerator = userIdGenerator;
+        this.transactionTemplate = transactionTemplate;
+        this.userChangeFeed = userChangeFeed;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        //Si la cola se llena, el hilo de la importación encripta él mismo (CallerRunsPolicy), así la memoria queda acotada
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.hashingPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), runnable -> {
+            Thread thread = new Thread(runnable, "bulk-password-hashing");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.hashingPool.shutdown();
+    }
+
+    public UserImportResult importUsers(InputStream inputStream, String contentType) throws IOException {
+        boolean csv = contentType != null && contentType.startsWith(CSV_MEDIA_TYPE);
+        //Se calcula aquí, ya que solo está disponible en el hilo de la petición
+        String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath().toUriString();
+        UserImportResult result = new UserImportResult();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String[] header = null;
+        List<UserImportRow> chunk = new ArrayList<>(this.chunkSize);
+        List<Long> chunkLines = new ArrayList<>(this.chunkSize);
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            if (csv && header == null) {
+                header = this.parseCsvLine(line);
+                continue;
+            }
+            try {
+                chunk.add(csv ? this.fromCsv(header, this.parseCsvLine(line)) : this.objectMapper.readValue(line, UserImportRow.class));
+                chunkLines.add(lineNumber);
+            } catch (IOException e) {
+                result.addSkipped(lineNumber, "Malformed row");
+            }
+            if (chunk.size() == this.chunkSize) {
+                this.importChunk(chunk, chunkLines, baseUrl, result);
+                chunk.clear();
+                chunkLines.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            this.importChunk(chunk, chunkLines, baseUrl, result);
+        }
+        this.logger.info("Bulk import finished: {} imported, {} skipped, {} emails not queued", result.getImported(),
+                result.getSkipped(), result.getEmailsNotQueued());
+        return result;
+    }
+
+    public void exportUsers(OutputStream outputStream, Set<UserField> fields, boolean csv) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        if (csv) {
+            List<String> header = new ArrayList<>(fields.size());
+            fields.forEach(field -> header.add(field.getJsonName()));
+            writer.write(String.join(CSV_SEPARATOR, header));
+            writer.write('\n');
+        }
+        long lastId = 0;
+        List<Map<String, Object>> rows;
+        do {
+            rows = this.userRepository.findProjectedAfterId(lastId, this.chunkSize, fields);
+            for (Map<String, Object> row : rows) {
+                lastId = (Long) row.remove(IUserProjectionRepository.KEYSET_ID);
+                if (fields.contains(UserField.AUTHORITIES)) {
+                    String role = (String) row.get(UserField.ROLE.getJsonName());
+                    row.put(UserField.AUTHORITIES.getJsonName(), this.permissionResolver.getAuthorities(role));
+                    if (!fields.contains(UserField.ROLE)) {
+                        row.remove(UserField.ROLE.getJsonName());
+                    }
+                }
+                writer.write(csv ? this.toCsvLine(row) : this.objectMapper.writeValueAsString(row));
+                writer.write('\n');
+            }
+            writer.flush();
+        } while (rows.size() == this.chunkSize);
+    }
+
+    private void importChunk(List<UserImportRow> rows, List<Long> lines, String baseUrl, UserImportResult result) {
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<UserImportRow> valid = new ArrayList<>(rows.size());
+        List<Long> validLines = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            UserImportRow row = rows.get(i);
+            String error = this.validate(row);
+            if (error == null && !usernames.add(row.getUsername())) {
+                error = "Duplicated username in file";
+            } else if (error == null && !emails.add(row.getEmail())) {
+                error = "Duplicated email in file";
+            }
+            if (error == null) {
+                valid.add(row);
+                validLines.add(lines.get(i));
+            } else {
+                result.addSkipped(lines.get(i), error);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        Set<String> existingUsernames = new HashSet<>(this.userRepository.findExistingUsernames(usernames));
+        Set<String> existingEmails = new HashSet<>(this.userRepository.findExistingEmails(emails));
+        List<User> users = new ArrayList<>(valid.size());
+        List<Long> userLines = new ArrayList<>(valid.size());
+        List<String> passwords = new ArrayList<>(valid.size());
+        List<Future<String>> encodedPasswords = new ArrayList<>(valid.size());
+        for (int i = 0; i < valid.size(); i++) {
+            UserImportRow row = valid.get(i);
+            if (existingUsernames.contains(row.getUsername())) {
+                result.addSkipped(validLines.get(i), "Username already exists");
+            } else if (existingEmails.contains(row.getEmail())) {
+                result.addSkipped(validLines.get(i), "Email already exists");
+            } else {
+                String password = RandomStringUtils.randomAlphanumeric(10);
+                passwords.add(password);
+                encodedPasswords.add(this.hashingPool.submit(() -> this.passwordEncoder.encode(password)));
+                users.add(this.toUser(row, baseUrl));
+                userLines.add(validLines.get(i));
+            }
+        }
+
+        try {
+            for (int i = 0; i < users.size(); i++) {
+                users.get(i).setPassword(encodedPasswords.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        try {
+            this.transactionTemplate.executeWithoutResult(status -> {
+                this.userRepository.saveAll(users);
+                List<String> importedUsernames = new ArrayList<>(users.size());
+                users.forEach(user -> importedUsernames.add(user.getUsername()));
+                this.userChangeFeed.recordAll(UserChangeType.CREATED, importedUsernames);
+                this.userSearchIndex.indexAll(users);
+                users.stream().filter(user -> !user.isNotLocked())
+                        .forEach(user -> this.loginAttemptService.setAccountLocked(user.getUsername(), true, null));
+            });
+        } catch (DataAccessException e) {
+            //Por ejemplo, si otro proceso creó el mismo username entre la validación y el insert
+            this.logger.error("Bulk import chunk failed: {}", e.getMessage());
+            userLines.forEach(line -> result.addSkipped(line, "Could not save the chunk of this row"));
+            return;
+        }
+        result.addImported(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            this.auditService.publish(AuditEventType.USER_ADDED, user.getUsername(), "Bulk import");
+            String username = user.getUsername();
+            if (!this.emailService.queueNewPasswordEmail(user.getFirstName(), passwords.get(i), user.getEmail(),
+                    () -> this.clearPasswordResetRequired(username))) {
+                result.addEmailNotQueued();
+            }
+        }
+    }
+
+    //Si falla, el usuario solo queda marcado para resetear el password aunque ya recibió el correo
+    private void clearPasswordResetRequired(String username) {
+        try {
+            this.userRepository.clearPasswordResetRequired(username);
+        } catch (DataAccessException e) {
+            this.logger.error("Could not clear passwordResetRequired of {}: {}", username, e.getMessage());
+        }
+    }
+
+    private String validate(UserImportRow row) {
+        if (StringUtils.isBlank(row.getFirstName()) || StringUtils.isBlank(row.getLastName())
+                || StringUtils.isBlank(row.getUsername()) || StringUtils.isBlank(row.getEmail())) {
+            return "firstName, lastName, username and email are required";
+        }
+        if (StringUtils.isNotBlank(row.getRole())) {
+            try {
+                Role.valueOf(row.getRole().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return "Unknown role ".concat(row.getRole());
+            }
+        }
+        return null;
+    }
+
+    private User toUser(UserImportRow row, String baseUrl) {
+        Role role = StringUtils.isBlank(row.getRole()) ? Role.ROLE_USER : Role.valueOf(row.getRole().toUpperCase());
+        User user = new User();
+        user.setUserId(this.userIdGenerator.generateUserId());
+        user.setFirstName(row.getFirstName());
+        user.setLastName(row.getLastName());
+        user.setUsername(row.getUsername());
+        user.setEmail(row.getEmail());
+        user.setJoinDate(Instant.now());
+        user.setActive(row.isActive());
+        user.setNotLocked(row.isNotLocked());
+        user.setPasswordResetRequired(true);
+        user.setRole(role.name());
+        user.setProfileImageUrl(baseUrl + FileConstant.DEFAULT_USER_IMAGE_PATH + row.getUsername());
+        return user;
+    }
+
+    private UserImportRow fromCsv(String[] header, String[] values) throws IOException {
+        if (header == null || values.length != header.length) {
+            throw new IOException("Column count does not match the header");
+        }
+        Map<String, String> columns = new HashMap<>(header.length * 2);
+        for (int i = 0; i < header.length; i++) {
+            columns.put(header[i].trim(), values[i]);
+        }
+        UserImportRow row = new UserImportRow();
+        row.setFirstName(columns.get("firstName"));
+        row.setLastName(columns.get("lastName"));
+        row.setUsername(columns.get("username"));
+        row.setEmail(columns.get("email"));
+        row.setRole(columns.get("role"));
+        if (columns.containsKey("active")) {
+            row.setActive(Boolean.parseBoolean(columns.get("active")));
+        }
+        if (columns.containsKey("notLocked")) {
+            row.setNotLocked(Boolean.parseBoolean(columns.get("notLocked")));
+        }
+        return row;
+    }
+
+    //CSV simple (RFC 4180): campos separados por comas, opcionalmente entre comillas dobles ("" escapa una comilla)
+    private String[] parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values.toArray(new String[0]);
+    }
+
+    private String toCsvLine(Map<String, Object> row) {
+        List<String> values = new ArrayList<>(row.size());
+        for (Object value : row.values()) {
+            String text;
+            if (value == null) {
+                text = "";
+            } else if (value instanceof String[]) {
+                text = String.join(AUTHORITIES_SEPARATOR, (String[]) value);
+            } else if (value instanceof Instant) {
+                text = String.valueOf(((Instant) value).toEpochMilli()); //Epoch en milisegundos, como antes de java.time
+            } else {
+                text = value.toString();
+            }
+            if (text.contains(",") || text.contains("\"") || text.contains("\n")) {
+                text = "\"" + text.replace("\"", "\"\"") + "\"";
+            }
+            values.add(text);
+        }
+        return String.join(CSV_SEPARATOR, values);
+    }
+
+}
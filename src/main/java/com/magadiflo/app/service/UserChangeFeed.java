@@ -0,0 +1,441 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.domain.User;
+import com.magadiflo.app.domain.UserChange;
+import com.magadiflo.app.domain.UserChangeSet;
+import com.magadiflo.app.enumeration.UserChangeType;
+import com.magadiflo.app.exception.domain.RateLimitExceededException;
+import com.magadiflo.app.repository.IUserChangeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registro de cambios de usuarios, para que los clientes sincronicen solo lo que cambió en lugar
+ * de volver a descargar /user/list.
+ * <p>
+ * Cada cambio se inserta en user_changes dentro de la misma transacción que lo produce, así un
+ * cambio queda registrado si y solo si se confirmó. La versión (AUTO_INCREMENT) se asigna al
+ * insertar, pero las transacciones pueden confirmarse en otro orden: mientras una versión menor
+ * aún no es visible, los cambios posteriores a ese hueco no se entregan. De esa manera un cliente
+ * no avanza su since por encima de un cambio que aún no pudo ver.
+ * <p>
+ * Un hueco también puede ser de una transacción que se revirtió o de un INSERT ... SELECT que
+ * reservó más valores de los que usó (el AUTO_INCREMENT no los reutiliza). Cuando el cambio
+ * posterior al hueco tiene más de user-changes.settle-ms, el dispatcher inserta una fila SKIPPED
+ * con cada versión faltante. No se decide por tiempo: si la versión es de una transacción que aún
+ * no termina, el INSERT espera su bloqueo y falla por clave duplicada si esa transacción se
+ * confirma, en ese caso el cambio se entrega normalmente.
+ * <p>
+ * SSE: un único hilo (user-changes-dispatcher) lee los cambios nuevos cada
+ * user-changes.poll-interval-ms (o apenas se confirma un cambio en esta instancia) y los agrega a
+ * la cola de cada suscriptor. Al leer de la BD también se entregan los cambios hechos en otras
+ * instancias. Cada suscriptor tiene su propia cola acotada (user-changes.sse.queue-capacity) y los
+ * envíos los hacen los hilos user-changes-sender, así un cliente lento no retrasa a los demás.
+ * Si la cola de un suscriptor se llena se le envía el evento resync y se cierra la conexión,
+ * el cliente debe continuar con /user/changes?since= desde la última versión que recibió.
+ * <p>
+ * Los inicios de sesión (lastLoginDate) no se registran como cambios.
+ * Los cambios con más de user-changes.retention-days se eliminan cada user-changes.prune-interval-ms.
+ * <p>
+ * Métricas: user.changes.subscribers y user.changes.subscribers.dropped (colas llenas).
+ */
+@Service
+public class UserChangeFeed {
+
+    public static final String CHANGE_EVENT = "user-change";
+    public static final String RESYNC_EVENT = "resync";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IUserChangeRepository userChangeRepository;
+    private final Duration settleTime;
+    private final Duration retention;
+    private final long pollIntervalMs;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final int maxSubscribers;
+    private final long subscriberTimeoutMs;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Semaphore wakeUps = new Semaphore(0);
+    private final ExecutorService senders;
+    private final Counter droppedSubscribers;
+
+    //Hasta dónde llegó el dispatcher, para no buscar el primer hueco desde el inicio de la tabla
+    private volatile long settledVersion;
+    private volatile boolean running;
+    private Thread dispatcherThread;
+
+    public UserChangeFeed(IUserChangeRepository userChangeRepository, MeterRegistry meterRegistry,
+                          @Value("${user-changes.settle-ms:10000}") long settleMs,
+                          @Value("${user-changes.retention-days:30}") long retentionDays,
+                          @Value("${user-changes.poll-interval-ms:1000}") long pollIntervalMs,
+                          @Value("${user-changes.batch-size:500}") int batchSize,
+                          @Value("${user-changes.sse.queue-capacity:256}") int queueCapacity,
+                          @Value("${user-changes.sse.max-subscribers:1000}") int maxSubscribers,
+                          @Value("${user-changes.sse.timeout-ms:1800000}") long subscriberTimeoutMs,
+                          @Value("${user-changes.sse.sender-threads:4}") int senderThreads) {
+        this.userChangeRepository = userChangeRepository;
+        this.settleTime = Duration.ofMillis(settleMs);
+        this.retention = Duration.ofDays(retentionDays);
+        this.pollIntervalMs = pollIntervalMs;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.maxSubscribers = maxSubscribers;
+        this.subscriberTimeoutMs = subscriberTimeoutMs;
+        AtomicInteger senderNumber = new AtomicInteger();
+        //Hay como máximo una tarea pendiente por suscriptor, por eso la cola de tareas no necesita límite
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "user-changes-sender-" + senderNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("user.changes.subscribers", this.subscribers, Set::size)
+                .description("Clients subscribed to the user change stream").register(meterRegistry);
+        this.droppedSubscribers = Counter.builder("user.changes.subscribers.dropped")
+                .description("Subscribers disconnected because their queue was full").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        this.running = true;
+        this.dispatcherThread = new Thread(this::runDispatcher, "user-changes-dispatcher");
+        this.dispatcherThread.setDaemon(true);
+        this.dispatcherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        this.running = false;
+        this.wakeUps.release();
+        this.dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+        this.subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        this.senders.shutdown();
+    }
+
+    /**
+     * Registra el cambio de un usuario, debe llamarse dentro de la transacción que lo modifica
+     */
+    public void record(UserChangeType type, User user) {
+        this.userChangeRepository.save(new UserChange(type, user.getUserId(), user.getUsername()));
+        this.wakeUpAfterCommit();
+    }
+
+    //Un solo INSERT para varios usuarios (ejm. importación masiva)
+    public void recordAll(UserChangeType type, Collection<String> usernames) {
+        if (!usernames.isEmpty()) {
+            this.userChangeRepository.insertChanges(type.name(), usernames, Instant.now());
+            this.wakeUpAfterCommit();
+        }
+    }
+
+    //Antes del UPDATE que los desbloquea, solo se registran los usuarios que están bloqueados
+    public void recordUnlocks(Collection<String> usernames) {
+        if (!usernames.isEmpty() && this.userChangeRepository.insertUnlockChanges(usernames, Instant.now()) > 0) {
+            this.wakeUpAfterCommit();
+        }
+    }
+
+    //Antes del UPDATE que desbloquea las cuentas cuyo bloqueo venció (ver LoginAttemptService)
+    public void recordExpiredUnlocks(Instant now) {
+        if (this.userChangeRepository.insertExpiredUnlockChanges(now) > 0) {
+            this.wakeUpAfterCommit();
+        }
+    }
+
+    /**
+     * Cambios con versión mayor a since (como máximo limit). Sin since solo se devuelve nextSince,
+     * la versión desde la que el cliente debe continuar después de descargar /user/list.
+     * El campo users de la respuesta lo completa el servicio de usuarios.
+     */
+    public UserChangeSet findChanges(Long since, int limit) {
+        if (since == null) {
+            return new UserChangeSet(Collections.emptyList(), null, this.findSettledVersion(), false, false);
+        }
+        Long oldest = this.userChangeRepository.findOldestVersion();
+        if (oldest != null && since < oldest - 1) {
+            return new UserChangeSet(Collections.emptyList(), null, this.findSettledVersion(), false, true);
+        }
+        return this.readSettled(since, limit);
+    }
+
+    /**
+     * Nueva suscripción SSE. Primero se envían los cambios posteriores a since (si se indicó)
+     * y luego los nuevos. Cada evento lleva como id la versión, el cliente puede reconectarse
+     * con la cabecera Last-Event-ID.
+     */
+    public SseEmitter subscribe(Long since) throws RateLimitExceededException {
+        if (this.subscribers.size() >= this.maxSubscribers) {
+            throw new RateLimitExceededException("Too many subscribers to the user change stream", 30);
+        }
+        Subscriber subscriber = new Subscriber(new SseEmitter(this.subscriberTimeoutMs));
+        subscriber.emitter.onCompletion(() -> this.subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(subscriber::close);
+        subscriber.emitter.onError(error -> subscriber.close());
+        subscriber.lastSentVersion = since == null ? 0 : since;
+        //Se registra antes de leer los cambios pendientes, así no se pierde ninguno (los repetidos se descartan por versión)
+        this.subscribers.add(subscriber);
+        try {
+            if (since != null) {
+                this.sendPendingChanges(subscriber, since);
+            }
+        } catch (IOException | DataAccessException e) {
+            this.subscribers.remove(subscriber);
+            this.logger.error("Could not send the pending user changes: {}", e.getMessage());
+            subscriber.emitter.completeWithError(e);
+            return subscriber.emitter;
+        }
+        subscriber.ready = true;
+        subscriber.schedule();
+        return subscriber.emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${user-changes.prune-interval-ms:3600000}")
+    public void prune() {
+        try {
+            int deleted = this.userChangeRepository.deleteOlderThan(Instant.now().minus(this.retention));
+            if (deleted > 0) {
+                this.logger.info("Deleted {} user changes older than {} days", deleted, this.retention.toDays());
+            }
+        } catch (DataAccessException e) {
+            this.logger.error("Could not delete the old user changes: {}", e.getMessage());
+        }
+    }
+
+    //Hasta queueCapacity cambios, si hay más el cliente debe usar /user/changes
+    private void sendPendingChanges(Subscriber subscriber, long since) throws IOException {
+        Long oldest = this.userChangeRepository.findOldestVersion();
+        UserChangeSet page = this.readSettled(since, this.queueCapacity + 1);
+        if ((oldest != null && since < oldest - 1) || page.getChanges().size() > this.queueCapacity) {
+            subscriber.overflowed = true;
+            return;
+        }
+        for (UserChange change : page.getChanges()) {
+            subscriber.emitter.send(this.event(change));
+        }
+        subscriber.lastSentVersion = page.getNextSince();
+    }
+
+    private UserChangeSet readSettled(long since, int limit) {
+        return settledPage(this.userChangeRepository.findByVersionGreaterThanOrderByVersionAsc(since, PageRequest.of(0, limit)), since, limit);
+    }
+
+    /**
+     * Cambios de rows (ordenados por versión) hasta el primer hueco de versiones. Las filas SKIPPED
+     * no se devuelven pero avanzan nextSince. hasMore solo si se leyeron limit filas sin encontrar un hueco.
+     */
+    static UserChangeSet settledPage(List<UserChange> rows, long since, int limit) {
+        List<UserChange> changes = new ArrayList<>(rows.size());
+        long lastVersion = since;
+        int settledRows = 0;
+        for (UserChange change : rows) {
+            if (change.getVersion() != lastVersion + 1) {
+                break;
+            }
+            if (change.getType() != UserChangeType.SKIPPED) {
+                changes.add(change);
+            }
+            lastVersion = change.getVersion();
+            settledRows++;
+        }
+        boolean hasMore = rows.size() == limit && settledRows == rows.size();
+        return new UserChangeSet(changes, null, lastVersion, hasMore, false);
+    }
+
+    /**
+     * Cierra el hueco posterior a settledVersion si el cambio siguiente tiene más de settle-ms
+     * (ver la descripción de la clase). Devuelve true si hay que volver a leer los cambios.
+     * Mientras una transacción pendiente tenga la versión, el dispatcher espera en el INSERT.
+     */
+    boolean fillGap(long settledVersion) {
+        List<UserChange> next = this.userChangeRepository.findByVersionGreaterThanOrderByVersionAsc(settledVersion, PageRequest.of(0, 1));
+        if (next.isEmpty() || next.get(0).getChangedDate().isAfter(Instant.now().minus(this.settleTime))) {
+            return false;
+        }
+        Instant now = Instant.now();
+        for (long version = settledVersion + 1; version < next.get(0).getVersion(); version++) {
+            try {
+                this.userChangeRepository.insertSkipped(version, now);
+            } catch (DataIntegrityViolationException e) {
+                //La transacción se confirmó (o otra instancia ya cerró el hueco), la fila se lee normalmente
+                this.logger.debug("User change version {} already exists", version);
+            }
+        }
+        return true;
+    }
+
+    //Última versión antes del primer hueco, desde ahí un cliente puede continuar sin perder cambios
+    private long findSettledVersion() {
+        long from = this.settledVersion;
+        if (from == 0) {
+            Long oldest = this.userChangeRepository.findOldestVersion();
+            if (oldest == null) {
+                return 0;
+            }
+            from = oldest;
+        }
+        Long settled = this.userChangeRepository.findSettledVersion(from);
+        return settled == null ? from : settled;
+    }
+
+    private void runDispatcher() {
+        long dispatchedVersion = -1;
+        boolean failing = false;
+        while (this.running) {
+            try {
+                this.wakeUps.tryAcquire(this.pollIntervalMs, TimeUnit.MILLISECONDS);
+                this.wakeUps.drainPermits();
+                if (dispatchedVersion < 0) {
+                    //Los suscriptores reciben los cambios anteriores a su suscripción con sendPendingChanges
+                    dispatchedVersion = this.findSettledVersion();
+                }
+                UserChangeSet page;
+                do {
+                    page = this.readSettled(dispatchedVersion, this.batchSize);
+                    for (UserChange change : page.getChanges()) {
+                        this.subscribers.forEach(subscriber -> subscriber.offer(change));
+                    }
+                    dispatchedVersion = page.getNextSince();
+                    this.settledVersion = dispatchedVersion;
+                } while ((page.isHasMore() || this.fillGap(dispatchedVersion)) && this.running);
+                failing = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (DataAccessException e) {
+                //Solo se registra el primer error, se reintenta en cada intervalo
+                if (!failing) {
+                    this.logger.error("Could not read the user changes: {}", e.getMessage());
+                    failing = true;
+                }
+            }
+        }
+    }
+
+    //El dispatcher no espera al siguiente intervalo si el cambio se hizo en esta instancia
+    private void wakeUpAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUps.release();
+                }
+            });
+        } else {
+            this.wakeUps.release();
+        }
+    }
+
+    private SseEmitter.SseEventBuilder event(UserChange change) {
+        return SseEmitter.event().id(String.valueOf(change.getVersion())).name(CHANGE_EVENT)
+                .data(change, MediaType.APPLICATION_JSON);
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<UserChange> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean ready;
+        private volatile boolean overflowed;
+        private volatile boolean closed;
+        private volatile long lastSentVersion;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        //Lo llama el dispatcher, nunca se bloquea
+        private void offer(UserChange change) {
+            if (this.closed || this.overflowed) {
+                return;
+            }
+            if (!this.queue.offer(change)) {
+                this.overflowed = true;
+                this.queue.clear();
+            }
+            if (this.ready) {
+                this.schedule();
+            }
+        }
+
+        //Como máximo un envío en curso por suscriptor, así los eventos se envían en orden
+        private void schedule() {
+            if (!this.closed && this.sending.compareAndSet(false, true)) {
+                senders.execute(this::send);
+            }
+        }
+
+        private void send() {
+            try {
+                if (this.overflowed) {
+                    droppedSubscribers.increment();
+                    this.emitter.send(SseEmitter.event().name(RESYNC_EVENT).data(this.lastSentVersion));
+                    this.close();
+                    return;
+                }
+                UserChange change;
+                while (!this.closed && (change = this.queue.poll()) != null) {
+                    if (change.getVersion() > this.lastSentVersion) {
+                        this.emitter.send(event(change));
+                        this.lastSentVersion = change.getVersion();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                //El cliente cerró la conexión, el contenedor notifica el error al emitter (no se llama a complete)
+                this.closed = true;
+                subscribers.remove(this);
+                return;
+            } finally {
+                this.sending.set(false);
+            }
+            if (!this.queue.isEmpty() || this.overflowed) {
+                this.schedule();
+            }
+        }
+
+        private void close() {
+            if (!this.closed) {
+                this.closed = true;
+                subscribers.remove(this);
+                this.emitter.complete();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.constant.FileConstant;
+import com.magadiflo.app.repository.IUserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Elimina en segundo plano a los usuarios marcados como eliminados (ver UserServiceImpl.deleteUser).
+ * <p>
+ * Cada purge.interval-ms toma lotes de purge.batch-size usuarios eliminados hace más de
+ * purge.grace-period-minutes. Por cada lote primero borra las carpetas de la papelera y luego
+ * elimina las filas con un solo DELETE (en su propia transacción, así los bloqueos de la BD duran
+ * solo lo que tarda ese DELETE). Entre lote y lote espera purge.batch-pause-ms para no competir
+ * con las peticiones por el disco y la BD.
+ * <p>
+ * Reintentos: si una carpeta no se pudo borrar, su fila se deja para la siguiente ejecución; tras
+ * purge.max-attempts intentos se elimina la fila de todas formas (la carpeta queda en la papelera
+ * y se registra en el log). Si el DELETE falla se termina la ejecución y se reintenta en la siguiente.
+ * <p>
+ * Métricas: users.purge.pending, users.purge.rows, users.purge.folders y users.purge.failures.
+ */
+@Service
+public class UserPurgeService {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IUserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final int maxAttempts;
+    private final Duration gracePeriod;
+    private final Path trashFolder = Paths.get(FileConstant.TRASH_FOLDER).toAbsolutePath().normalize();
+    //id -> intentos fallidos de borrar su carpeta
+    private final Map<Long, Integer> failedAttempts = new ConcurrentHashMap<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final Counter purgedRows;
+    private final Counter purgedFolders;
+    private final Counter failures;
+
+    public UserPurgeService(IUserRepository userRepository, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                            @Value("${purge.batch-size:100}") int batchSize,
+                            @Value("${purge.batch-pause-ms:200}") long batchPauseMs,
+                            @Value("${purge.max-attempts:5}") int maxAttempts,
+                            @Value("${purge.grace-period-minutes:0}") long gracePeriodMinutes) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.batchPauseMs = batchPauseMs;
+        this.maxAttempts = maxAttempts;
+        this.gracePeriod = Duration.ofMinutes(gracePeriodMinutes);
+        Gauge.builder("users.purge.pending", this.pending, AtomicLong::get)
+                .description("Deleted users waiting to be purged").register(meterRegistry);
+        this.purgedRows = Counter.builder("users.purge.rows").register(meterRegistry);
+        this.purgedFolders = Counter.builder("users.purge.folders").register(meterRegistry);
+        this.failures = Counter.builder("users.purge.failures").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${purge.interval-ms:60000}")
+    public void purge() {
+        try {
+            Instant cutoff = Instant.now().minus(this.gracePeriod);
+            int purged = 0;
+            List<Long> ids;
+            //Los ids que aún no se pueden eliminar (carpeta con error) se saltan con afterId
+            long afterId = 0;
+            while (!(ids = this.findDeletedIds(cutoff, afterId)).isEmpty()) {
+                afterId = ids.get(ids.size() - 1);
+                List<Long> purgeable = this.deleteFolders(ids);
+                if (!purgeable.isEmpty()) {
+                    Integer deleted = this.transactionTemplate.execute(status -> this.userRepository.purgeDeleted(purgeable));
+                    purged += deleted == null ? 0 : deleted;
+                    this.purgedRows.increment(deleted == null ? 0 : deleted);
+                    purgeable.forEach(this.failedAttempts::remove);
+                }
+                if (ids.size() < this.batchSize) {
+                    break;
+                }
+                Thread.sleep(this.batchPauseMs);
+            }
+            if (purged > 0) {
+                this.logger.info("Purged {} deleted users", purged);
+            }
+        } catch (DataAccessException e) {
+            this.failures.increment();
+            this.logger.error("User purge failed, it will be retried: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.updatePending();
+        }
+    }
+
+    //findDeletedIds ordena por id, se filtran los menores o iguales a afterId
+    private List<Long> findDeletedIds(Instant cutoff, long afterId) {
+        List<Long> ids = new ArrayList<>(this.batchSize);
+        for (Number id : this.userRepository.findDeletedIds(cutoff, afterId, this.batchSize)) {
+            ids.add(id.longValue());
+        }
+        return ids;
+    }
+
+    //Devuelve los ids cuyas filas ya se pueden eliminar
+    private List<Long> deleteFolders(List<Long> ids) {
+        List<Long> purgeable = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Path folder = this.trashFolder.resolve(String.valueOf(id));
+            try {
+                if (Files.exists(folder)) {
+                    FileUtils.deleteDirectory(new File(folder.toString()));
+                    this.purgedFolders.increment();
+                }
+                purgeable.add(id);
+            } catch (IOException e) {
+                this.failures.increment();
+                int attempts = this.failedAttempts.merge(id, 1, Integer::sum);
+                if (attempts >= this.maxAttempts) {
+                    this.logger.error("Could not delete folder {} after {} attempts, the user row is purged anyway: {}", folder, attempts, e.getMessage());
+                    purgeable.add(id);
+                } else {
+                    this.logger.warn("Could not delete folder {} (attempt {}), it will be retried: {}", folder, attempts, e.getMessage());
+                }
+            }
+        }
+        return purgeable;
+    }
+
+    private void updatePending() {
+        try {
+            this.pending.set(this.userRepository.countDeleted());
+        } catch (DataAccessException e) {
+            this.logger.error(e.getMessage());
+        }
+    }
+
+}
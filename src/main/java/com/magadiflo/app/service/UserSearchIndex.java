@@ -0,0 +1,293 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.domain.User;
+import com.magadiflo.app.domain.UserSearchHit;
+import com.magadiflo.app.domain.UserSearchResult;
+import com.magadiflo.app.repository.IUserRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Índice invertido en memoria (Apache Lucene) para buscar usuarios por username,
+ * nombres y email, con coincidencia exacta, por prefijo y aproximada (fuzzy).
+ * <p>
+ * El índice se construye en segundo plano al iniciar la aplicación y luego se
+ * mantiene actualizado de forma incremental desde el UserServiceImpl. Las
+ * actualizaciones se aplican después del commit de la transacción, así una
+ * transacción que hace rollback no deja cambios en el índice.
+ * <p>
+ * Mientras se construye el índice, los usuarios actualizados o eliminados de forma incremental
+ * se anotan y la construcción ya no los escribe, así un usuario leído de la BD antes del cambio no
+ * reemplaza al documento más reciente ni vuelve a agregar a un usuario eliminado.
+ * <p>
+ * Solo se pueden pedir los primeros MAXIMUM_RESULT_WINDOW resultados (page y size), ya que Lucene
+ * reserva memoria para todos los resultados hasta la página pedida.
+ * <p>
+ * Los valores que se muestran en los resultados se guardan en el propio índice,
+ * por lo que una búsqueda no consulta la BD.
+ */
+@Service
+public class UserSearchIndex {
+
+    private static final String ID = "id";
+    private static final String USERNAME = "username";
+    private static final String FIRST_NAME = "firstName";
+    private static final String LAST_NAME = "lastName";
+    private static final String EMAIL = "email";
+    private static final String PROFILE_IMAGE_URL = "profileImageUrl";
+    private static final String EXACT_SUFFIX = "_exact"; //Valor completo en minúsculas, sin separar en palabras
+    private static final String[] SEARCHABLE_FIELDS = {USERNAME, FIRST_NAME, LAST_NAME, EMAIL};
+    private static final int INITIAL_BUILD_BATCH_SIZE = 1000;
+    private static final int MINIMUM_FUZZY_LENGTH = 3;
+    private static final int MAXIMUM_RESULT_WINDOW = 10_000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IUserRepository userRepository;
+    private final IndexWriter indexWriter;
+    private final SearcherManager searcherManager;
+    //Ids actualizados o eliminados mientras se construye el índice, se modifica con buildLock
+    private final Set<Long> updatedDuringBuild = new HashSet<>();
+    private final Object buildLock = new Object();
+    private boolean building;
+
+    public UserSearchIndex(IUserRepository userRepository) throws IOException {
+        this.userRepository = userRepository;
+        this.indexWriter = new IndexWriter(new ByteBuffersDirectory(), new IndexWriterConfig(new StandardAnalyzer()));
+        this.searcherManager = new SearcherManager(this.indexWriter, null);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndex() {
+        synchronized (this.buildLock) {
+            this.building = true;
+        }
+        Thread indexer = new Thread(() -> {
+            long lastId = 0;
+            long indexed = 0;
+            List<User> users;
+            try {
+                do {
+                    users = this.userRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, INITIAL_BUILD_BATCH_SIZE));
+                    synchronized (this.buildLock) {
+                        for (User user : users) {
+                            if (!this.updatedDuringBuild.contains(user.getId())) {
+                                this.write(user);
+                            }
+                            lastId = user.getId();
+                        }
+                    }
+                    indexed += users.size();
+                } while (users.size() == INITIAL_BUILD_BATCH_SIZE);
+            } finally {
+                synchronized (this.buildLock) {
+                    this.building = false;
+                    this.updatedDuringBuild.clear();
+                }
+            }
+            this.refresh();
+            this.logger.info("User search index built with {} users", indexed);
+        }, "user-search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        this.searcherManager.close();
+        this.indexWriter.close();
+    }
+
+    public void index(User user) {
+        this.afterCommit(() -> {
+            synchronized (this.buildLock) {
+                this.markUpdated(user.getId());
+                this.write(user);
+            }
+            this.refresh();
+        });
+    }
+
+    //Para la importación masiva, un solo refresh para todo el lote
+    public void indexAll(Collection<User> users) {
+        this.afterCommit(() -> {
+            synchronized (this.buildLock) {
+                for (User user : users) {
+                    this.markUpdated(user.getId());
+                    this.write(user);
+                }
+            }
+            this.refresh();
+        });
+    }
+
+    public void remove(Long id) {
+        this.afterCommit(() -> {
+            synchronized (this.buildLock) {
+                this.markUpdated(id);
+                try {
+                    this.indexWriter.deleteDocuments(new Term(ID, String.valueOf(id)));
+                } catch (IOException e) {
+                    this.logger.error("Could not remove user {} from the search index: {}", id, e.getMessage());
+                }
+            }
+            this.refresh();
+        });
+    }
+
+    public UserSearchResult search(String text, int page, int size) {
+        Query query = this.buildQuery(text);
+        if (query == null) {
+            return new UserSearchResult(text, page, size, 0, Collections.emptyList());
+        }
+        IndexSearcher searcher = null;
+        try {
+            searcher = this.searcherManager.acquire();
+            long numHits = (long) (page + 1) * size; //long, (page + 1) * size puede desbordar un int
+            if (numHits > MAXIMUM_RESULT_WINDOW) {
+                return new UserSearchResult(text, page, size, searcher.count(query), Collections.emptyList());
+            }
+            TopDocs topDocs = searcher.search(query, (int) numHits);
+            List<UserSearchHit> hits = new ArrayList<>(size);
+            for (int i = page * size; i < topDocs.scoreDocs.length; i++) {
+                ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+                Document document = searcher.doc(scoreDoc.doc);
+                hits.add(new UserSearchHit(document.get(USERNAME), document.get(FIRST_NAME), document.get(LAST_NAME),
+                        document.get(EMAIL), document.get(PROFILE_IMAGE_URL), scoreDoc.score));
+            }
+            return new UserSearchResult(text, page, size, topDocs.totalHits.value, hits);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (searcher != null) {
+                this.release(searcher);
+            }
+        }
+    }
+
+    /**
+     * Cada palabra buscada debe coincidir (MUST) con alguno de los campos.
+     * Una coincidencia exacta puntúa más que una por prefijo, y esta más que una aproximada.
+     */
+    private Query buildQuery(String text) {
+        if (StringUtils.isBlank(text)) {
+            return null;
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        for (String token : text.toLowerCase(Locale.ROOT).trim().split("\\s+")) {
+            BooleanQuery.Builder tokenQuery = new BooleanQuery.Builder();
+            for (String field : SEARCHABLE_FIELDS) {
+                tokenQuery.add(new BoostQuery(new TermQuery(new Term(field, token)), 4f), BooleanClause.Occur.SHOULD);
+                tokenQuery.add(new BoostQuery(new PrefixQuery(new Term(field, token)), 2f), BooleanClause.Occur.SHOULD);
+                tokenQuery.add(new BoostQuery(new PrefixQuery(new Term(field + EXACT_SUFFIX, token)), 2f), BooleanClause.Occur.SHOULD);
+                if (token.length() >= MINIMUM_FUZZY_LENGTH) {
+                    int maxEdits = token.length() > 5 ? 2 : 1;
+                    tokenQuery.add(new FuzzyQuery(new Term(field, token), maxEdits), BooleanClause.Occur.SHOULD);
+                }
+            }
+            query.add(tokenQuery.build(), BooleanClause.Occur.MUST);
+        }
+        return query.build();
+    }
+
+    private void write(User user) {
+        Document document = new Document();
+        document.add(new StringField(ID, String.valueOf(user.getId()), Field.Store.NO));
+        this.addSearchable(document, USERNAME, user.getUsername());
+        this.addSearchable(document, FIRST_NAME, user.getFirstName());
+        this.addSearchable(document, LAST_NAME, user.getLastName());
+        this.addSearchable(document, EMAIL, user.getEmail());
+        if (user.getProfileImageUrl() != null) {
+            document.add(new StoredField(PROFILE_IMAGE_URL, user.getProfileImageUrl()));
+        }
+        try {
+            this.indexWriter.updateDocument(new Term(ID, String.valueOf(user.getId())), document);
+        } catch (IOException e) {
+            this.logger.error("Could not index user {}: {}", user.getUsername(), e.getMessage());
+        }
+    }
+
+    private void addSearchable(Document document, String field, String value) {
+        if (value != null) {
+            document.add(new TextField(field, value, Field.Store.YES));
+            document.add(new StringField(field + EXACT_SUFFIX, value.toLowerCase(Locale.ROOT), Field.Store.NO));
+        }
+    }
+
+    //Se llama con buildLock
+    private void markUpdated(Long id) {
+        if (this.building) {
+            this.updatedDuringBuild.add(id);
+        }
+    }
+
+    //Hace visibles para las búsquedas los cambios escritos en el índice
+    private void refresh() {
+        try {
+            this.searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            this.logger.error("Could not refresh the search index: {}", e.getMessage());
+        }
+    }
+
+    private void release(IndexSearcher searcher) {
+        try {
+            this.searcherManager.release(searcher);
+        } catch (IOException e) {
+            this.logger.error(e.getMessage());
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.magadiflo.app.service.impl;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.magadiflo.app.enumeration.RateLimit;
+import com.magadiflo.app.service.IRateLimitStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token buckets en memoria (Guava Cache).
+ * <p>
+ * - Memoria acotada: como máximo rate-limit.max-keys buckets; los que no se usan durante
+ * rate-limit.idle-expiration-minutes se eliminan (un bucket eliminado vuelve a empezar lleno,
+ * y para entonces ya se habría recargado por completo).
+ * - Sin locks: el estado de cada bucket (tokens, última recarga) es inmutable y se reemplaza
+ * con compareAndSet. Los tokens se recargan al consumir, según el tiempo transcurrido.
+ */
+@Service
+public class InMemoryRateLimitStore implements IRateLimitStore {
+
+    private final LoadingCache<String, AtomicReference<BucketState>> buckets;
+
+    public InMemoryRateLimitStore(@Value("${rate-limit.max-keys:100000}") long maxKeys,
+                                  @Value("${rate-limit.idle-expiration-minutes:60}") long idleExpirationMinutes) {
+        this.buckets = CacheBuilder.newBuilder().maximumSize(maxKeys)
+                .expireAfterAccess(idleExpirationMinutes, TimeUnit.MINUTES)
+                .build(new CacheLoader<String, AtomicReference<BucketState>>() {
+                    @Override
+                    public AtomicReference<BucketState> load(String key) {
+                        return new AtomicReference<>(); //null = bucket lleno
+                    }
+                });
+    }
+
+    @Override
+    public long tryConsume(String key, RateLimit rateLimit) {
+        AtomicReference<BucketState> bucket = this.buckets.getUnchecked(key);
+        while (true) {
+            long now = System.nanoTime();
+            BucketState current = bucket.get();
+            double tokens = current == null ? rateLimit.getCapacity()
+                    : Math.min(rateLimit.getCapacity(), current.tokens + (now - current.updatedNanos) * rateLimit.getTokensPerNano());
+            if (tokens < 1) {
+                double waitNanos = (1 - tokens) / rateLimit.getTokensPerNano();
+                return Math.max(1, (long) Math.ceil(waitNanos / 1_000_000));
+            }
+            if (bucket.compareAndSet(current, new BucketState(tokens - 1, now))) {
+                return 0;
+            }
+        }
+    }
+
+    private static final class BucketState {
+        private final double tokens;
+        private final long updatedNanos;
+
+        private BucketState(double tokens, long updatedNanos) {
+            this.tokens = tokens;
+            this.updatedNanos = updatedNanos;
+        }
+    }
+
+}
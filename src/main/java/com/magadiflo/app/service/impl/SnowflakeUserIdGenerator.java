@@ -0,0 +1,73 @@
+package com.magadiflo.app.service.impl;
+
+import com.magadiflo.app.service.IUserIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Genera userIds de 64 bits al estilo Snowflake:
+ * <p>
+ * | 41 bits: milisegundos desde EPOCH | 10 bits: nodo | 12 bits: secuencia |
+ * <p>
+ * - Dos nodos distintos (user-id.node-id) nunca generan el mismo id. No tiene valor por defecto:
+ * si dos instancias usaran el mismo nodo podrían generar el mismo id, por eso sin él la aplicación no inicia.
+ * - En un mismo nodo los ids son crecientes, así los inserts se agregan al final del índice.
+ * - No usa locks: el último (milisegundo, secuencia) entregado se guarda en un solo AtomicLong
+ * que se actualiza con compareAndSet. Si en un milisegundo se agotan las 4096 secuencias, se
+ * continúa con el milisegundo siguiente (el reloj lo alcanzará), y si el reloj del sistema
+ * retrocede se sigue desde el último valor entregado, por lo que nunca se repite un id.
+ * <p>
+ * El id se devuelve con ceros a la izquierda hasta 19 dígitos, de modo que el orden
+ * alfabético de la columna user_id coincide con el orden numérico.
+ */
+@Service
+public class SnowflakeUserIdGenerator implements IUserIdGenerator {
+
+    private static final long EPOCH = 1640995200000L; //2022-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAXIMUM_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int USER_ID_LENGTH = 19; //Dígitos de Long.MAX_VALUE
+
+    private final long nodeBits;
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+
+    public SnowflakeUserIdGenerator(@Value("${user-id.node-id}") long nodeId) {
+        if (nodeId < 0 || nodeId > MAXIMUM_NODE_ID) {
+            throw new IllegalArgumentException("user-id.node-id must be between 0 and " + MAXIMUM_NODE_ID);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+    }
+
+    @Override
+    public String generateUserId() {
+        return pad(this.nextId());
+    }
+
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long last;
+        long next;
+        do {
+            last = this.lastTimestampAndSequence.get();
+            //Nuevo milisegundo: secuencia 0. Mismo milisegundo (o reloj atrasado): siguiente secuencia
+            next = now > last ? now : last + 1;
+        } while (!this.lastTimestampAndSequence.compareAndSet(last, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | this.nodeBits | (next & SEQUENCE_MASK);
+    }
+
+    private static String pad(long id) {
+        char[] digits = new char[USER_ID_LENGTH];
+        for (int i = USER_ID_LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + id % 10);
+            id /= 10;
+        }
+        return new String(digits);
+    }
+
+}
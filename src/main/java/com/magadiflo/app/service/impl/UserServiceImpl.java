@@ -1,54 +1,82 @@
 package com.magadiflo.app.service.impl;
 
 import static com.magadiflo.app.constant.UserImplConstant.*;
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 
 import com.magadiflo.app.constant.FileConstant;
 import com.magadiflo.app.domain.User;
+import com.magadiflo.app.domain.UserChange;
+import com.magadiflo.app.domain.UserChangeSet;
 import com.magadiflo.app.domain.UserPrincipal;
+import com.magadiflo.app.domain.UserSearchResult;
+import com.magadiflo.app.enumeration.AuditEventType;
 import com.magadiflo.app.enumeration.Role;
+import com.magadiflo.app.enumeration.UserChangeType;
+import com.magadiflo.app.enumeration.UserField;
 import com.magadiflo.app.exception.domain.*;
 import com.magadiflo.app.repository.IUserRepository;
+import com.magadiflo.app.service.AuditService;
+import com.magadiflo.app.service.AvatarSpriteService;
 import com.magadiflo.app.service.EmailService;
+import com.magadiflo.app.service.IUserIdGenerator;
 import com.magadiflo.app.service.IUserService;
 import com.magadiflo.app.service.LoginAttemptService;
+import com.magadiflo.app.service.PermissionResolver;
+import com.magadiflo.app.service.ProfileImageStore;
+import com.magadiflo.app.service.UserChangeFeed;
+import com.magadiflo.app.service.UserSearchIndex;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.tomcat.util.http.fileupload.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.http.MediaType;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.mail.MessagingException;
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Date;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Por defecto los métodos son de solo lectura (se pueden atender desde una réplica, ver
+ * ReplicaRoutingDataSource). Los métodos que escriben en la BD se marcan con @Transactional.
+ */
 @Service
-@Transactional
+@Transactional(readOnly = true)
 @Qualifier("userDetailsService")
 public class UserServiceImpl implements IUserService, UserDetailsService {
 
     //getClass(), es propio de cada clase y devuelve la clase
     //Es como se hiciera UserServiceImpl.class
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private static final Set<UserField> PATCHABLE_FIELDS = Collections.unmodifiableSet(EnumSet.of(UserField.FIRST_NAME,
+            UserField.LAST_NAME, UserField.USERNAME, UserField.EMAIL, UserField.ROLE, UserField.ACTIVE, UserField.NOT_LOCKED));
     private final IUserRepository userRepository;
 
     private final BCryptPasswordEncoder passwordEncoder;
@@ -57,14 +85,35 @@ public class UserServiceImpl implements IUserService, UserDetailsService {
 
     private final EmailService emailService;
 
+    private final AuditService auditService;
+
+    private final PermissionResolver permissionResolver;
+
+    private final UserSearchIndex userSearchIndex;
+    private final IUserIdGenerator userIdGenerator;
+    private final ProfileImageStore profileImageStore;
+    private final AvatarSpriteService avatarSpriteService;
+    private final UserChangeFeed userChangeFeed;
+
     @Autowired
     //Inyección de Dependencia basada en el constructor, en este tipo de inyección ya no sería necesario el @Autowired
     public UserServiceImpl(IUserRepository userRepository, BCryptPasswordEncoder passwordEncoder,
-                           LoginAttemptService loginAttemptService, EmailService emailService) {
+                           LoginAttemptService loginAttemptService, EmailService emailService,
+                           AuditService auditService, PermissionResolver permissionResolver,
+                           UserSearchIndex userSearchIndex, IUserIdGenerator userIdGenerator,
+                           ProfileImageStore profileImageStore, AvatarSpriteService avatarSpriteService,
+                           UserChangeFeed userChangeFeed) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.loginAttemptService = loginAttemptService;
         this.emailService = emailService;
+        this.auditService = auditService;
+        this.permissionResolver = permissionResolver;
+        this.userSearchIndex = userSearchIndex;
+        this.userIdGenerator = userIdGenerator;
+        this.profileImageStore = profileImageStore;
+        this.avatarSpriteService = avatarSpriteService;
+        this.userChangeFeed = userChangeFeed;
     }
 
     /**
@@ -72,6 +121,7 @@ public class UserServiceImpl implements IUserService, UserDetailsService {
      * intenta comprobar la autenticación del usuario
      */
     @Override
+    @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = this.userRepository.findUserByUsername(username);
         if (user == null) {
@@ -81,17 +131,19 @@ public class UserServiceImpl implements IUserService, UserDetailsService {
             this.validateLoginAttempt(user);
 
             user.setLastLoginDateDisplay(user.getLastLoginDate());
-            user.setLastLoginDate(new Date());
+            user.setLastLoginDate(Instant.now());
 
             this.userRepository.save(user);
 
-            UserPrincipal userPrincipal = new UserPrincipal(user);
+            this.withAuthorities(user);
+            UserPrincipal userPrincipal = new UserPrincipal(user, this.permissionResolver.getPermissionMask(user.getRole()));
             logger.info(RETURNING_FOUND_USER_BY_USERNAME.concat("{}"), username);
             return userPrincipal;
         }
     }
 
     @Override
+    @Transactional
     public User register(String firstName, String lastName, String username, String email)
             throws UserNotFoundException, EmailExistException, UsernameExistException, MessagingException {
 
@@ -99,20 +151,23 @@ public class UserServiceImpl implements IUserService, UserDetailsService {
         String password = this.generatePassword();
 
         User user = new User();
-        user.setUserId(this.generateUserId());
+        user.setUserId(this.userIdGenerator.generateUserId());
         user.setFirstName(firstName);
         user.setLastName(lastName);
         user.setUsername(username);
         user.setEmail(email);
-        user.setJoinDate(new Date());
+        user.setJoinDate(Instant.now());
         user.setPassword(this.encodePassword(password));
         user.setActive(true);
         user.setNotLocked(true);
         user.setRole(Role.ROLE_USER.name());
-        user.setAuthorities(Role.ROLE_USER.getAuthorities());
+        user.setAuthorities(this.permissionResolver.getAuthorities(Role.ROLE_USER.name()));
         user.setProfileImageUrl(this.getTemporaryProfileImageUrl(username));
 
         this.userRepository.save(user);
+        this.userSearchIndex.index(user);
+        this.userChangeFeed.record(UserChangeType.CREATED, user);
+        this.auditService.publish(AuditEventType.USER_REGISTERED, username, null);
         logger.info("Register New user password: {}", password);
         this.emailService.sendNewPasswordEmail(firstName, password, email);
 
@@ -120,85 +175,224 @@ public class UserServiceImpl implements IUserService, UserDetailsService {
     }
 
     @Override
-    public List<User> getUsers() {
-        return this.userRepository.findAll();
+    public List<Map<String, Object>> getUsers(Set<UserField> fields, Boolean passwordResetRequired) {
+        List<Map<String, Object>> users = this.userRepository.findAllProjected(fields, passwordResetRequired);
+        users.forEach(user -> this.withAuthorities(user, fields));
+        return users;
     }
 
     @Override
     public User findUserByUsername(String username) {
-        return this.userRepository.findUserByUsername(username);
+        return this.withAuthorities(this.userRepository.findUserByUsername(username));
+    }
+
+    @Override
+    public Map<String, Object> findUserByUsername(String username, Set<UserField> fields) {
+        return this.withAuthorities(this.userRepository.findProjectedByUsername(username, fields), fields);
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> findUsers(UserField keyField, List<String> identifiers, Set<UserField> fields) {
+        Set<String> keys = new LinkedHashSet<>(identifiers);
+        Map<String, Map<String, Object>> rowsByKey = this.userRepository.findProjectedByKeys(keyField, keys, fields);
+        rowsByKey.values().forEach(user -> this.withAuthorities(user, fields));
+        //Con la collation por defecto de MySQL la comparación ignora mayúsculas, así que la fila
+        //puede venir con otro casing que el identificador solicitado
+        Map<String, Map<String, Object>> rowsByKeyIgnoreCase = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        rowsByKeyIgnoreCase.putAll(rowsByKey);
+        Map<String, Map<String, Object>> users = new LinkedHashMap<>();
+        for (String key : keys) {
+            Map<String, Object> user = rowsByKey.get(key);
+            if (user == null) {
+                user = rowsByKeyIgnoreCase.get(key);
+            }
+            users.put(key, user);
+        }
+        return users;
+    }
+
+    @Override
+    public UserChangeSet getChanges(Long since, int limit, Set<UserField> fields) {
+        UserChangeSet changeSet = this.userChangeFeed.findChanges(since, limit);
+        List<String> userIds = new ArrayList<>(changeSet.getChanges().size());
+        for (UserChange change : changeSet.getChanges()) {
+            if (change.getUserId() != null) {
+                userIds.add(change.getUserId());
+            }
+        }
+        changeSet.setUsers(this.findUsers(UserField.USER_ID, userIds, fields));
+        return changeSet;
     }
 
     @Override
     public User findUserByEmail(String email) {
-        return this.userRepository.findUserByEmail(email);
+        return this.withAuthorities(this.userRepository.findUserByEmail(email));
     }
 
     @Override
+    public UserSearchResult searchUsers(String query, int page, int size) {
+        return this.userSearchIndex.search(query, page, size);
+    }
+
+    @Override
+    @Transactional
     public User addNewUser(String firstName, String lastName, String username, String email, String role,
                            boolean isNotLocked, boolean isActive, MultipartFile profileImage)
-            throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException {
+            throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException, ImageTooLargeException {
 
         this.validateNewUsernameAndEmail(StringUtils.EMPTY, username, email);
 
         String password = this.generatePassword();
 
         User user = new User();
-        user.setUserId(this.generateUserId());
+        user.setUserId(this.userIdGenerator.generateUserId());
         user.setFirstName(firstName);
         user.setLastName(lastName);
         user.setUsername(username);
         user.setEmail(email);
-        user.setJoinDate(new Date());
+        user.setJoinDate(Instant.now());
         user.setPassword(this.encodePassword(password));
         user.setActive(isActive);
         user.setNotLocked(isNotLocked);
         user.setRole(this.getRoleEnumName(role).name());
-        user.setAuthorities(this.getRoleEnumName(role).getAuthorities());
+        user.setAuthorities(this.permissionResolver.getAuthorities(user.getRole()));
         user.setProfileImageUrl(this.getTemporaryProfileImageUrl(username));
 
         this.userRepository.save(user);
 
         this.saveProfileImage(user, profileImage);
+        this.userSearchIndex.index(user);
+        this.loginAttemptService.setAccountLocked(username, !isNotLocked, null);
+        this.userChangeFeed.record(UserChangeType.CREATED, user);
+        this.auditService.publish(AuditEventType.USER_ADDED, username, user.getRole());
         logger.info("Add New user password: ".concat(password));
 
         return user;
     }
 
     @Override
+    @Transactional
     public User updateUser(String currentUsername, String newFirstName, String newLastName, String newUsername,
-                           String newEmail, String role, boolean isNotLocked, boolean isActive, MultipartFile profileImage)
-            throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException {
+                           String newEmail, String role, boolean isNotLocked, boolean isActive, MultipartFile profileImage,
+                           Long expectedVersion)
+            throws UserNotFoundException, EmailExistException, UsernameExistException, IOException, NotAnImageFileException,
+            ImageTooLargeException, PreconditionFailedException {
 
         User currentUser = this.validateNewUsernameAndEmail(currentUsername, newUsername, newEmail);
+        this.validateVersion(currentUser, expectedVersion);
         currentUser.setFirstName(newFirstName);
         currentUser.setLastName(newLastName);
         currentUser.setUsername(newUsername);
         currentUser.setEmail(newEmail);
         currentUser.setActive(isActive);
-        currentUser.setNotLocked(isNotLocked);
+        this.setNotLocked(currentUser, isNotLocked);
         currentUser.setRole(this.getRoleEnumName(role).name());
-        currentUser.setAuthorities(this.getRoleEnumName(role).getAuthorities());
+        currentUser.setAuthorities(this.permissionResolver.getAuthorities(currentUser.getRole()));
 
-        this.userRepository.save(currentUser);
+        this.userRepository.saveAndFlush(currentUser); //Así la versión devuelta (ETag) ya está incrementada
 
         this.saveProfileImage(currentUser, profileImage);
+        this.userSearchIndex.index(currentUser);
+        this.syncLockState(currentUsername, currentUser);
+        this.userChangeFeed.record(UserChangeType.UPDATED, currentUser);
+        this.auditService.publish(AuditEventType.USER_UPDATED, newUsername, "Previous username: ".concat(currentUsername));
 
         return currentUser;
     }
 
     @Override
+    @Transactional
+    public User patchUser(String username, Map<String, Object> changes, Long expectedVersion)
+            throws UserNotFoundException, EmailExistException, UsernameExistException, InvalidFieldException,
+            PreconditionFailedException {
+
+        Map<UserField, Object> values = new EnumMap<>(UserField.class);
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            UserField field = UserField.fromJsonName(change.getKey());
+            if (field == null || !PATCHABLE_FIELDS.contains(field)) {
+                throw new InvalidFieldException(FIELD_CANNOT_BE_UPDATED.concat(change.getKey()));
+            }
+            values.put(field, this.validatePatchValue(field, change.getValue()));
+        }
+
+        User currentUser = this.validateNewUsernameAndEmail(username,
+                (String) values.get(UserField.USERNAME), (String) values.get(UserField.EMAIL));
+        this.validateVersion(currentUser, expectedVersion);
+
+        //Con @DynamicUpdate, el UPDATE solo incluye las columnas que realmente cambiaron
+        for (Map.Entry<UserField, Object> value : values.entrySet()) {
+            switch (value.getKey()) {
+                case FIRST_NAME: currentUser.setFirstName((String) value.getValue()); break;
+                case LAST_NAME: currentUser.setLastName((String) value.getValue()); break;
+                case USERNAME: currentUser.setUsername((String) value.getValue()); break;
+                case EMAIL: currentUser.setEmail((String) value.getValue()); break;
+                case ROLE: currentUser.setRole((String) value.getValue()); break;
+                case ACTIVE: currentUser.setActive((Boolean) value.getValue()); break;
+                case NOT_LOCKED: this.setNotLocked(currentUser, (Boolean) value.getValue()); break;
+                default: throw new InvalidFieldException(FIELD_CANNOT_BE_UPDATED.concat(value.getKey().getJsonName()));
+            }
+        }
+        currentUser.setAuthorities(this.permissionResolver.getAuthorities(currentUser.getRole()));
+
+        //saveAndFlush, para que el UPDATE (y el incremento de la versión) ocurra antes de devolver el ETag
+        this.userRepository.saveAndFlush(currentUser);
+
+        this.userSearchIndex.index(currentUser);
+        this.syncLockState(username, currentUser);
+        this.userChangeFeed.record(UserChangeType.UPDATED, currentUser);
+        this.auditService.publish(AuditEventType.USER_UPDATED, currentUser.getUsername(), "Changed fields: ".concat(String.join(",", changes.keySet())));
+
+        return currentUser;
+    }
+
+    /**
+     * Eliminación lógica: se marca al usuario y su carpeta se mueve a la papelera (un rename, no
+     * depende del tamaño de la carpeta). La fila y los archivos los elimina el UserPurgeService.
+     * rollbackFor, si no se pudo mover la carpeta el usuario no queda marcado como eliminado
+     */
+    @Override
+    @Transactional(rollbackFor = IOException.class)
     public void deleteUser(String username) throws UserNotFoundException, IOException {
         User user = this.userRepository.findUserByUsername(username);
         if (user == null) {
             throw new UserNotFoundException(NO_USER_FOUND_BY_USERNAME.concat(username));
         }
+        user.setDeleted(true);
+        user.setDeletedDate(Instant.now());
+        this.userRepository.saveAndFlush(user);
+
         Path userFolder = Paths.get(FileConstant.USER_FOLDER.concat(user.getUsername())).toAbsolutePath().normalize();
-        FileUtils.deleteDirectory(new File(userFolder.toString()));
-        this.userRepository.deleteById(user.getId());
+        if (Files.exists(userFolder)) {
+            Path trashFolder = Paths.get(FileConstant.TRASH_FOLDER).toAbsolutePath().normalize();
+            Files.createDirectories(trashFolder);
+            Files.move(userFolder, trashFolder.resolve(String.valueOf(user.getId())), ATOMIC_MOVE);
+        }
+        this.avatarSpriteService.invalidate(user.getUsername());
+        this.userSearchIndex.remove(user.getId());
+        this.loginAttemptService.removeUser(user.getUsername());
+        this.userChangeFeed.record(UserChangeType.DELETED, user);
+        this.auditService.publish(AuditEventType.USER_DELETED, username, null);
     }
 
     @Override
+    @Transactional
+    public int unlockUsers(List<String> usernames) {
+        if (usernames.isEmpty()) {
+            return 0;
+        }
+        //Solo se registran y auditan las cuentas que realmente se desbloquean
+        List<String> lockedUsernames = this.userRepository.findLockedUsernames(usernames);
+        if (lockedUsernames.isEmpty()) {
+            return 0;
+        }
+        this.userChangeFeed.recordUnlocks(lockedUsernames);
+        int unlocked = this.loginAttemptService.unlockAccounts(lockedUsernames);
+        lockedUsernames.forEach(username -> this.auditService.publish(AuditEventType.ACCOUNT_UNLOCKED, username, "Bulk unlock"));
+        return unlocked;
+    }
+
+    @Override
+    @Transactional
     public void resetPassword(String email) throws EmailNotFoundException, MessagingException {
         User user = this.userRepository.findUserByEmail(email);
         if (user == null) {
@@ -210,15 +404,36 @@ public class UserServiceImpl implements IUserService, UserDetailsService {
         logger.info("Reset password: ".concat(password));
 
         this.userRepository.save(user);
+        this.auditService.publish(AuditEventType.PASSWORD_RESET, user.getUsername(), null);
         this.emailService.sendNewPasswordEmail(user.getFirstName(), password, user.getEmail());
+        user.setPasswordResetRequired(false); //Se guarda al confirmar la transacción, solo si se envió el correo
     }
 
     @Override
+    @Transactional
     public User updateProfileImage(String username, MultipartFile profileImage)
             throws UserNotFoundException, EmailExistException, UsernameExistException, IOException,
-            NotAnImageFileException {
+            NotAnImageFileException, ImageTooLargeException {
         User user = this.validateNewUsernameAndEmail(username, null, null);
         this.saveProfileImage(user, profileImage);
+        this.userSearchIndex.index(user);
+        this.userChangeFeed.record(UserChangeType.PROFILE_IMAGE_UPDATED, user);
+        this.auditService.publish(AuditEventType.PROFILE_IMAGE_UPDATED, username, null);
+        return user;
+    }
+
+    @Override
+    @Transactional
+    public User updateProfileImage(String username, Path receivedImage) throws UserNotFoundException, IOException {
+        User user = this.userRepository.findUserByUsername(username);
+        if (user == null) {
+            this.profileImageStore.discard(receivedImage);
+            throw new UserNotFoundException(NO_USER_FOUND_BY_USERNAME.concat(username));
+        }
+        this.storeProfileImage(user, receivedImage);
+        this.userSearchIndex.index(user);
+        this.userChangeFeed.record(UserChangeType.PROFILE_IMAGE_UPDATED, user);
+        this.auditService.publish(AuditEventType.PROFILE_IMAGE_UPDATED, username, null);
         return user;
     }
 
@@ -257,10 +472,6 @@ public class UserServiceImpl implements IUserService, UserDetailsService {
         }
     }
 
-    private String generateUserId() {
-        return RandomStringUtils.randomNumeric(10);
-    }
-
     private String generatePassword() {
         return RandomStringUtils.randomAlphanumeric(10);
     }
@@ -279,35 +490,140 @@ public class UserServiceImpl implements IUserService, UserDetailsService {
         if (user.isNotLocked()) {
             if (this.loginAttemptService.hasExceededMaxAttempts(user.getUsername())) {
                 user.setNotLocked(false); //La cuenta será bloqueada
+                user.setLockedUntil(this.loginAttemptService.newLockExpiration());
+                this.loginAttemptService.setAccountLocked(user.getUsername(), true, user.getLockedUntil());
+                this.userChangeFeed.record(UserChangeType.LOCKED, user);
+                this.auditService.publish(AuditEventType.ACCOUNT_LOCKED, user.getUsername(), "Maximum number of login attempts exceeded");
             } else {
                 user.setNotLocked(true); //La cuenta no estará bloqueada
             }
+        } else if (user.getLockedUntil() != null && !user.getLockedUntil().isAfter(Instant.now())) {
+            //El bloqueo ya venció, pero aún no se ejecutó el LoginAttemptService.unlockExpiredAccounts()
+            this.setNotLocked(user, true);
+            this.loginAttemptService.setAccountLocked(user.getUsername(), false, null);
+            this.userChangeFeed.record(UserChangeType.UNLOCKED, user);
+            this.auditService.publish(AuditEventType.ACCOUNT_UNLOCKED, user.getUsername(), "Lock expired");
         } else { //Como la cuenta está bloqueada, solo para estar seguros eliminamos el usuario de la caché, si alguna vez estuvieron
             this.loginAttemptService.evictUserFromLoginAttemptCache(user.getUsername());
+            this.loginAttemptService.setAccountLocked(user.getUsername(), true, user.getLockedUntil());
+        }
+    }
+
+    /**
+     * Un bloqueo hecho por un administrador no vence (lockedUntil = null). Si la cuenta ya estaba
+     * bloqueada y sigue así (ejm. solo se cambió el nombre) se mantiene el vencimiento que tenía
+     */
+    private void setNotLocked(User user, boolean notLocked) {
+        if (notLocked || user.isNotLocked()) {
+            user.setLockedUntil(null);
+        }
+        user.setNotLocked(notLocked);
+    }
+
+    //Mantiene el conjunto de bloqueados del LoginAttemptService igual a la BD (también si cambió el username)
+    private void syncLockState(String previousUsername, User user) {
+        if (!previousUsername.equals(user.getUsername())) {
+            this.loginAttemptService.removeUser(previousUsername);
+        }
+        this.loginAttemptService.setAccountLocked(user.getUsername(), !user.isNotLocked(), user.getLockedUntil());
+    }
+
+    //Los permisos no se guardan en la tabla users, se resuelven en memoria a partir del rol
+    private User withAuthorities(User user) {
+        if (user != null) {
+            user.setAuthorities(this.permissionResolver.getAuthorities(user.getRole()));
+        }
+        return user;
+    }
+
+    //El repositorio incluye el role cuando se piden las authorities, si no se pidió el role lo quitamos
+    private Map<String, Object> withAuthorities(Map<String, Object> user, Set<UserField> fields) {
+        if (user != null && fields.contains(UserField.AUTHORITIES)) {
+            String role = (String) user.get(UserField.ROLE.getJsonName());
+            user.put(UserField.AUTHORITIES.getJsonName(), this.permissionResolver.getAuthorities(role));
+            if (!fields.contains(UserField.ROLE)) {
+                user.remove(UserField.ROLE.getJsonName());
+            }
+        }
+        return user;
+    }
+
+    private void validateVersion(User user, Long expectedVersion) throws PreconditionFailedException {
+        if (expectedVersion != null && expectedVersion != user.getVersion()) {
+            throw new PreconditionFailedException(USER_MODIFIED_BY_ANOTHER_REQUEST);
         }
     }
 
+    private Object validatePatchValue(UserField field, Object value) throws InvalidFieldException {
+        if (field == UserField.ACTIVE || field == UserField.NOT_LOCKED) {
+            if (value instanceof Boolean) {
+                return value;
+            }
+        } else if (value instanceof String && StringUtils.isNotBlank((String) value)) {
+            if (field != UserField.ROLE) {
+                return value;
+            }
+            try {
+                return this.getRoleEnumName((String) value).name();
+            } catch (IllegalArgumentException e) {
+                //Rol inexistente, se responde como cualquier otro valor inválido
+            }
+        }
+        throw new InvalidFieldException(INVALID_FIELD_VALUE.concat(field.getJsonName()));
+    }
+
     private Role getRoleEnumName(String role) {
-        return Role.valueOf(role.toUpperCase());
+        return Role.fromName(role);
     }
 
-    private void saveProfileImage(User user, MultipartFile profileImage) throws IOException, NotAnImageFileException {
+    /**
+     * El tipo de la imagen se detecta por su contenido (ver ProfileImageStore), no por el
+     * Content-Type que envía el cliente
+     */
+    private void saveProfileImage(User user, MultipartFile profileImage)
+            throws IOException, NotAnImageFileException, ImageTooLargeException {
         if (profileImage != null) {
-            if (!Arrays.asList(MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_GIF_VALUE).contains(profileImage.getContentType())) {
-                throw new NotAnImageFileException(profileImage.getOriginalFilename().concat(" is not image file. Please upload an image."));
-            }
-            Path userFolder = Paths.get(FileConstant.USER_FOLDER.concat(user.getUsername())).toAbsolutePath().normalize();
-            if (!Files.exists(userFolder)) {
-                Files.createDirectories(userFolder);
-                logger.info(FileConstant.DIRECTORY_CREATED.concat(String.valueOf(userFolder)));
+            Path receivedImage;
+            try (InputStream inputStream = profileImage.getInputStream()) {
+                receivedImage = this.profileImageStore.receive(inputStream, profileImage.getSize());
             }
-            Files.deleteIfExists(Paths.get(userFolder + FileConstant.FORWARD_SLASH + user.getUsername() + FileConstant.DOT + FileConstant.JPG_EXTENSION)); //Elimina la imagen si existe
-            Files.copy(profileImage.getInputStream(), userFolder.resolve(user.getUsername() + FileConstant.DOT + FileConstant.JPG_EXTENSION), REPLACE_EXISTING); //Con esta línea podríamos obviar la línea anterior, pero para estar seguros de que será una nueva imagen lo dejamos
+            this.storeProfileImage(user, receivedImage);
+            logger.info(FileConstant.FILE_SAVED_IN_FILE_SYSTEM.concat(String.valueOf(profileImage.getOriginalFilename())));
+        }
+    }
 
-            user.setProfileImageUrl(this.setProfileImageUrl(user.getUsername()));
+    /**
+     * La imagen recibida reemplaza a la del usuario después del commit, así un rollback no deja la
+     * imagen nueva con los datos anteriores. Si la transacción no se confirma solo se elimina el archivo temporal.
+     */
+    private void storeProfileImage(User user, Path receivedImage) {
+        String username = user.getUsername();
+        user.setProfileImageUrl(this.setProfileImageUrl(username));
+        this.userRepository.save(user);
+        this.afterCompletion(committed -> {
+            if (committed) {
+                try {
+                    this.profileImageStore.moveToUserFolder(receivedImage, username);
+                    this.avatarSpriteService.invalidate(username);
+                } catch (IOException e) {
+                    this.logger.error("Could not move the profile image of {}: {}", username, e.getMessage());
+                }
+            }
+            this.profileImageStore.discard(receivedImage); //Si ya se movió no hace nada
+        });
+    }
 
-            this.userRepository.save(user);
-            logger.info(FileConstant.FILE_SAVED_IN_FILE_SYSTEM.concat(profileImage.getOriginalFilename()));
+    //committed: true si la transacción se confirmó. Sin transacción se ejecuta de inmediato
+    private void afterCompletion(Consumer<Boolean> action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.accept(status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            action.accept(true);
         }
     }
 
@@ -0,0 +1,70 @@
+package com.magadiflo.app.utility;
+
+import org.springframework.util.StringUtils;
+import org.springframework.web.cors.CorsConfiguration;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * CorsConfiguration cuyos orígenes permitidos se verifican con un HashSet (orígenes exactos)
+ * y una sola expresión regular compilada al crear el objeto (patrones con *, ejm. https://*.magadiflo.com).
+ * <p>
+ * El CorsConfiguration de Spring recorre sus listas comparando cadenas (y patrones) en cada
+ * petición; aquí verificar el origen es una búsqueda en el HashSet y, solo si no está,
+ * un matches() de la expresión regular.
+ * <p>
+ * Como se devuelve el mismo origen de la petición (nunca "*"), se puede usar con allowCredentials.
+ */
+public class CorsOriginRegistry extends CorsConfiguration {
+
+    private final Set<String> exactOrigins = new HashSet<>();
+    private final Pattern originPattern;
+
+    public CorsOriginRegistry(Collection<String> origins, Collection<String> originPatterns) {
+        for (String origin : origins) {
+            if (StringUtils.hasText(origin)) {
+                this.exactOrigins.add(this.normalize(origin));
+            }
+        }
+        StringJoiner regex = new StringJoiner("|");
+        for (String originPattern : originPatterns) {
+            if (StringUtils.hasText(originPattern)) {
+                regex.add(this.toRegex(this.normalize(originPattern)));
+            }
+        }
+        this.originPattern = regex.length() == 0 ? null : Pattern.compile(regex.toString());
+    }
+
+    @Override
+    public String checkOrigin(String requestOrigin) {
+        if (!StringUtils.hasText(requestOrigin)) {
+            return null;
+        }
+        String origin = this.normalize(requestOrigin);
+        if (this.exactOrigins.contains(origin) || (this.originPattern != null && this.originPattern.matcher(origin).matches())) {
+            return requestOrigin;
+        }
+        return null;
+    }
+
+    //Los orígenes no distinguen mayúsculas y no terminan en "/"
+    private String normalize(String origin) {
+        String normalized = origin.trim().toLowerCase(Locale.ROOT);
+        return normalized.endsWith("/") ? normalized.substring(0, normalized.length() - 1) : normalized;
+    }
+
+    //"*" equivale a cualquier secuencia de caracteres, el resto se compara literalmente
+    private String toRegex(String originPattern) {
+        StringJoiner regex = new StringJoiner(".*", "(?:", ")");
+        for (String part : originPattern.split("\\*", -1)) {
+            regex.add(part.isEmpty() ? "" : Pattern.quote(part));
+        }
+        return regex.toString();
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.magadiflo.app.utility;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.magadiflo.app.domain.HttpResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Escribe las respuestas de error (HttpResponse) en formato JSON.
+ * <p>
+ * Las respuestas de error con mensajes fijos (ejm. FORBIDDEN_MESSAGE) se
+ * serializan una sola vez al iniciar la aplicación con el ObjectMapper
+ * configurado por Spring, y se guardan como bytes. Como el timeStamp es
+ * la última propiedad de HttpResponse, la plantilla guardada es todo el JSON
+ * hasta "timeStamp": y en cada respuesta solo se agrega la fecha formateada.
+ * <p>
+ * La fecha formateada también se reutiliza mientras no cambie el segundo,
+ * ya que el formato (dd-MM-yyyy HH:mm:ss) no incluye milisegundos.
+ * <p>
+ * Los mensajes que no fueron pre-renderizados (ejm. los de las excepciones)
+ * se serializan normalmente con el mismo ObjectMapper compartido.
+ */
+@Component
+public class HttpResponseWriter {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern(HttpResponse.TIMESTAMP_PATTERN)
+            .withZone(ZoneId.of(HttpResponse.TIMESTAMP_TIMEZONE));
+    private static final String TIMESTAMP_PLACEHOLDER = "null}";
+
+    private final ObjectMapper objectMapper;
+    private final Map<HttpStatus, Map<String, byte[]>> templates = new EnumMap<>(HttpStatus.class);
+    private volatile CachedTimestamp cachedTimestamp = new CachedTimestamp(Long.MIN_VALUE, new byte[0]);
+
+    public HttpResponseWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        for (HttpStatus httpStatus : HttpStatus.values()) {
+            this.templates.put(httpStatus, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Serializa por adelantado la respuesta para ese estado y mensaje.
+     * Se debe llamar al crear los beans que usen mensajes fijos.
+     */
+    public void prerender(HttpStatus httpStatus, String message) {
+        HttpResponse httpResponse = this.httpResponse(httpStatus, message);
+        httpResponse.setTimeStamp(null);
+        String json;
+        try {
+            json = this.objectMapper.writeValueAsString(httpResponse);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        //Si el ObjectMapper omite los nulos o cambia el orden de las propiedades, no se puede usar la plantilla
+        if (json.endsWith(TIMESTAMP_PLACEHOLDER)) {
+            String template = json.substring(0, json.length() - TIMESTAMP_PLACEHOLDER.length());
+            this.templates.get(httpStatus).put(message, template.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public byte[] toBytes(HttpStatus httpStatus, String message) {
+        byte[] template = this.templates.get(httpStatus).get(message);
+        if (template == null) {
+            try {
+                return this.objectMapper.writeValueAsBytes(this.httpResponse(httpStatus, message));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        byte[] timestamp = this.timestamp();
+        byte[] body = new byte[template.length + timestamp.length];
+        System.arraycopy(template, 0, body, 0, template.length);
+        System.arraycopy(timestamp, 0, body, template.length, timestamp.length);
+        return body;
+    }
+
+    public ResponseEntity<byte[]> toResponseEntity(HttpStatus httpStatus, String message) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new ResponseEntity<>(this.toBytes(httpStatus, message), headers, httpStatus);
+    }
+
+    //Usado desde los filtros de seguridad, donde aún no estamos dentro de un controlador
+    public void write(HttpServletResponse response, HttpStatus httpStatus, String message) throws IOException {
+        byte[] template = this.templates.get(httpStatus).get(message);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setStatus(httpStatus.value());
+
+        OutputStream outputStream = response.getOutputStream();
+        if (template == null) {
+            outputStream.write(this.toBytes(httpStatus, message));
+        } else {
+            outputStream.write(template);
+            outputStream.write(this.timestamp());
+        }
+        outputStream.flush(); //Enviamos la respuesta al usuario
+    }
+
+    private HttpResponse httpResponse(HttpStatus httpStatus, String message) {
+        return new HttpResponse(httpStatus.value(), httpStatus, httpStatus.getReasonPhrase().toUpperCase(), message);
+    }
+
+    //Devuelve "dd-MM-yyyy HH:mm:ss"} listo para agregarse al final de la plantilla
+    private byte[] timestamp() {
+        long epochSecond = System.currentTimeMillis() / 1000;
+        CachedTimestamp current = this.cachedTimestamp;
+        if (current.epochSecond != epochSecond) {
+            String formatted = "\"" + TIMESTAMP_FORMATTER.format(Instant.ofEpochSecond(epochSecond)) + "\"}";
+            current = new CachedTimestamp(epochSecond, formatted.getBytes(StandardCharsets.UTF_8));
+            this.cachedTimestamp = current;
+        }
+        return current.bytes;
+    }
+
+    private static final class CachedTimestamp {
+        private final long epochSecond;
+        private final byte[] bytes;
+
+        private CachedTimestamp(long epochSecond, byte[] bytes) {
+            this.epochSecond = epochSecond;
+            this.bytes = bytes;
+        }
+    }
+
+}
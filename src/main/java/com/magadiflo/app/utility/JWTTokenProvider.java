@@ -1,95 +1,83 @@
 package com.magadiflo.app.utility;
 
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
-import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.JWTVerifier;
 import com.magadiflo.app.constant.SecurityConstant;
+import com.magadiflo.app.domain.PermissionAuthenticationToken;
 import com.magadiflo.app.domain.UserPrincipal;
+import com.magadiflo.app.enumeration.UserPermission;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 
 import javax.servlet.http.HttpServletRequest;
-import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
-import java.util.stream.Collectors;
 
+/**
+ * El algoritmo de firma (HS512 o ES256) lo define JwtSigningKeys.
+ * El JWTVerifier es inmutable y thread-safe, por eso se crea una sola vez.
+ * <p>
+ * Los permisos viajan en el claim perms como una máscara de bits (ver UserPermission)
+ * en lugar de un arreglo de cadenas. Los tokens emitidos antes de este cambio solo
+ * tienen el claim authorities, para ellos la máscara se calcula a partir de ese arreglo.
+ */
 @Component
 public class JWTTokenProvider {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    private final JwtSigningKeys jwtSigningKeys;
+    private final JWTVerifier verifier;
+
+    public JWTTokenProvider(JwtSigningKeys jwtSigningKeys) {
+        this.jwtSigningKeys = jwtSigningKeys;
+        this.verifier = JWT.require(jwtSigningKeys.getAlgorithm())
+                .withIssuer(SecurityConstant.MAGADIFLO_LLC)
+                .build();
+    }
 
     public String generateJwtToken(UserPrincipal userPrincipal) {
-        String[] claims = this.getClaimsFromUser(userPrincipal);
         return JWT.create()
                 .withIssuer(SecurityConstant.MAGADIFLO_LLC) //emisor del token
                 .withAudience(SecurityConstant.MAGADIFLO_ADMINISTRATION)
                 .withIssuedAt(new Date()) //Fecha en que se emitió el token
                 .withSubject(userPrincipal.getUsername()) //Será el usuario real, nombre de usuario o alguna identificación única que lo pueda identificar en la BD
-                .withArrayClaim(SecurityConstant.AUTHORITIES, claims) //Permisos
+                .withClaim(SecurityConstant.PERMISSIONS, userPrincipal.getPermissionMask()) //Permisos
                 .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstant.EXPIRATION_TIME)) //Vigencia del token
-                .sign(Algorithm.HMAC512(this.secret.getBytes())); //Firmando token con clave secreta
-    }
-
-    public List<GrantedAuthority> getAuthorities(String token) {
-        String[] claims = this.getClaimsFromToken(token);
-        return Arrays.stream(claims).map(SimpleGrantedAuthority::new).collect(Collectors.toList());
-    }
-
-    public Authentication getAuthentication(String username, List<GrantedAuthority> authorities, HttpServletRequest request) {
-        //No necesitamos credenciales en este momento porque ya la verificamos con el Token por eso le pasamos null
-        UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken =
-                new UsernamePasswordAuthenticationToken(username, null, authorities);
-        //Técnicamente, lo que hace es configurar información del usuario y eso significa contexto de seguridad
-        usernamePasswordAuthenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-        return usernamePasswordAuthenticationToken;
+                .sign(this.jwtSigningKeys.getAlgorithm()); //Firmando token (con ES256 se agrega la cabecera kid)
     }
 
-    public boolean isTokenValid(String username, String token) {
-        JWTVerifier verifier = this.getJWTVerifier();
-        return StringUtils.isNotEmpty(username) && !this.isTokenExpired(verifier, token);
+    /**
+     * Verifica la firma, el emisor y la vigencia del token una sola vez; el resultado
+     * se usa luego para obtener el usuario y sus permisos.
+     * Lanza JWTVerificationException (o TokenExpiredException) si el token no es válido.
+     */
+    public DecodedJWT verify(String token) {
+        return this.verifier.verify(token);
     }
 
-    public String getSubject(String token) {
-        JWTVerifier verifier = this.getJWTVerifier();
-        return verifier.verify(token).getSubject();
-    }
-
-    private boolean isTokenExpired(JWTVerifier verifier, String token) {
-        Date expiration = verifier.verify(token).getExpiresAt();
-        return expiration.before(new Date());
-    }
-
-    private String[] getClaimsFromToken(String token) {
-        JWTVerifier verifier = this.getJWTVerifier();
-        return verifier.verify(token).getClaim(SecurityConstant.AUTHORITIES).asArray(String.class);
+    public long getPermissionMask(DecodedJWT jwt) {
+        Claim permissions = jwt.getClaim(SecurityConstant.PERMISSIONS);
+        if (!permissions.isNull()) {
+            return permissions.asLong();
+        }
+        String[] authorities = jwt.getClaim(SecurityConstant.AUTHORITIES).asArray(String.class);
+        return authorities == null ? 0 : UserPermission.toMask(authorities);
     }
 
-    private JWTVerifier getJWTVerifier() {
-        JWTVerifier verifier;
-        try {
-            Algorithm algorithm = Algorithm.HMAC512(this.secret);
-            verifier = JWT.require(algorithm)
-                    .withIssuer(SecurityConstant.MAGADIFLO_LLC)
-                    .build();
-        } catch (JWTVerificationException e) {
-            throw new JWTVerificationException(SecurityConstant.TOKEN_CANNOT_BE_VERIFIED);
-        }
-        return verifier;
+    public Authentication getAuthentication(String username, long permissionMask, HttpServletRequest request) {
+        //No necesitamos credenciales en este momento porque ya la verificamos con el Token
+        PermissionAuthenticationToken authenticationToken = new PermissionAuthenticationToken(username, permissionMask);
+        //Técnicamente, lo que hace es configurar información del usuario y eso significa contexto de seguridad
+        authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        return authenticationToken;
     }
 
-    private String[] getClaimsFromUser(UserPrincipal userPrincipal) {
-        //toArray, Convierte la lista en un arreglo. Si la lista es del tamaño del arreglo especificado, se devuelve allí.
-        //De lo contrario, en tiempo de ejecución, se asigna un nuevo arreglo con el tipo especificado y el tamaño de esta lista.
-        return userPrincipal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toArray(String[]::new);
+    //El verifier ya rechaza los tokens vencidos, aquí se valida por si el token no tiene exp
+    public boolean isTokenValid(DecodedJWT jwt) {
+        Date expiration = jwt.getExpiresAt();
+        return StringUtils.isNotEmpty(jwt.getSubject()) && expiration != null && expiration.after(new Date());
     }
 
 }
@@ -0,0 +1,165 @@
+package com.magadiflo.app.utility;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.ECDSAKeyProvider;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Algoritmo y claves con los que se firman y verifican los JWT (jwt.algorithm).
+ * <p>
+ * HS512: HMAC con la clave compartida jwt.secret. Quien quiera verificar un token necesita el secreto.
+ * <p>
+ * ES256: ECDSA con la curva P-256. Se firma con la clave privada (jwt.ec-private-key, PKCS#8 en Base64)
+ * y cualquier servicio puede verificar con la clave pública, publicada en /.well-known/jwks.json e
+ * identificada por jwt.key-id (cabecera kid del token). Si no se configura ninguna de las dos claves,
+ * se genera un par al iniciar; los tokens emitidos dejan de ser válidos al reiniciar la aplicación.
+ * Si solo se configura una, la aplicación no inicia.
+ * <p>
+ * El Algorithm y el JWKS se crean una sola vez, al iniciar.
+ */
+@Component
+public class JwtSigningKeys {
+
+    public static final String HS512 = "HS512";
+    public static final String ES256 = "ES256";
+    private static final String EC_CURVE = "secp256r1";
+    private static final int EC_COORDINATE_LENGTH = 32; //Bytes de cada coordenada en P-256
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Algorithm algorithm;
+    private final byte[] jwks;
+
+    public JwtSigningKeys(ObjectMapper objectMapper,
+                          @Value("${jwt.algorithm:HS512}") String algorithm,
+                          @Value("${jwt.secret}") String secret,
+                          @Value("${jwt.key-id:}") String keyId,
+                          @Value("${jwt.ec-private-key:}") String ecPrivateKey,
+                          @Value("${jwt.ec-public-key:}") String ecPublicKey) throws GeneralSecurityException, JsonProcessingException {
+        Map<String, Object> jwks = new LinkedHashMap<>();
+        if (ES256.equalsIgnoreCase(algorithm)) {
+            KeyPair keyPair = this.loadOrGenerateKeyPair(ecPrivateKey, ecPublicKey);
+            ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+            ECPrivateKey privateKey = (ECPrivateKey) keyPair.getPrivate();
+            String kid = StringUtils.isBlank(keyId) ? this.thumbprint(publicKey) : keyId;
+            this.algorithm = Algorithm.ECDSA256(new StaticKeyProvider(kid, publicKey, privateKey));
+            jwks.put("keys", Collections.singletonList(this.toJwk(kid, publicKey)));
+        } else if (HS512.equalsIgnoreCase(algorithm)) {
+            this.algorithm = Algorithm.HMAC512(secret.getBytes(StandardCharsets.UTF_8));
+            jwks.put("keys", Collections.emptyList()); //Una clave simétrica nunca se publica
+        } else {
+            throw new IllegalArgumentException("Unsupported jwt.algorithm: " + algorithm);
+        }
+        this.jwks = objectMapper.writeValueAsBytes(jwks);
+    }
+
+    public Algorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    //JSON Web Key Set (RFC 7517) ya serializado
+    public byte[] getJwks() {
+        return this.jwks;
+    }
+
+    private KeyPair loadOrGenerateKeyPair(String ecPrivateKey, String ecPublicKey) throws GeneralSecurityException {
+        if (StringUtils.isBlank(ecPrivateKey) != StringUtils.isBlank(ecPublicKey)) {
+            throw new IllegalArgumentException("jwt.ec-private-key and jwt.ec-public-key must be configured together");
+        }
+        if (StringUtils.isBlank(ecPrivateKey)) {
+            this.logger.warn("jwt.ec-private-key / jwt.ec-public-key are not configured, using a generated key pair. Tokens will not survive a restart");
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(EC_CURVE));
+            return generator.generateKeyPair();
+        }
+        KeyFactory keyFactory = KeyFactory.getInstance("EC");
+        return new KeyPair(keyFactory.generatePublic(new X509EncodedKeySpec(this.decodePem(ecPublicKey))),
+                keyFactory.generatePrivate(new PKCS8EncodedKeySpec(this.decodePem(ecPrivateKey))));
+    }
+
+    //Acepta el Base64 solo o con las líneas -----BEGIN ...----- / -----END ...-----
+    private byte[] decodePem(String pem) {
+        return Base64.getMimeDecoder().decode(pem.replaceAll("-----[A-Z ]+-----", ""));
+    }
+
+    private Map<String, Object> toJwk(String kid, ECPublicKey publicKey) {
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        jwk.put("kty", "EC");
+        jwk.put("crv", "P-256");
+        jwk.put("use", "sig");
+        jwk.put("alg", ES256);
+        jwk.put("kid", kid);
+        jwk.put("x", this.base64Url(publicKey.getW().getAffineX()));
+        jwk.put("y", this.base64Url(publicKey.getW().getAffineY()));
+        return jwk;
+    }
+
+    //Si no se configura jwt.key-id, el kid se deriva de la clave pública, así cambia al rotarla
+    private String thumbprint(ECPublicKey publicKey) throws GeneralSecurityException {
+        String canonical = "{\"crv\":\"P-256\",\"kty\":\"EC\",\"x\":\"" + this.base64Url(publicKey.getW().getAffineX()) +
+                "\",\"y\":\"" + this.base64Url(publicKey.getW().getAffineY()) + "\"}";
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    //Coordenada sin signo, de longitud fija (RFC 7518, sección 6.2.1.2)
+    private String base64Url(BigInteger coordinate) {
+        byte[] bytes = coordinate.toByteArray();
+        byte[] fixed = new byte[EC_COORDINATE_LENGTH];
+        int length = Math.min(bytes.length, EC_COORDINATE_LENGTH);
+        System.arraycopy(bytes, bytes.length - length, fixed, EC_COORDINATE_LENGTH - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+
+    private static final class StaticKeyProvider implements ECDSAKeyProvider {
+        private final String kid;
+        private final ECPublicKey publicKey;
+        private final ECPrivateKey privateKey;
+
+        private StaticKeyProvider(String kid, ECPublicKey publicKey, ECPrivateKey privateKey) {
+            this.kid = kid;
+            this.publicKey = publicKey;
+            this.privateKey = privateKey;
+        }
+
+        @Override
+        public ECPublicKey getPublicKeyById(String keyId) {
+            //Un token con otro kid no se puede verificar con esta clave
+            return keyId == null || this.kid.equals(keyId) ? this.publicKey : null;
+        }
+
+        @Override
+        public ECPrivateKey getPrivateKey() {
+            return this.privateKey;
+        }
+
+        @Override
+        public String getPrivateKeyId() {
+            return this.kid;
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.magadiflo.app.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Envía las transacciones de solo lectura (@Transactional(readOnly = true)) a las réplicas
+ * y el resto al primario.
+ * <p>
+ * La decisión se toma al obtener la conexión, por eso este DataSource debe envolverse en un
+ * LazyConnectionDataSourceProxy: así la conexión real se pide con la primera sentencia,
+ * cuando Spring ya marcó la transacción como readOnly.
+ * <p>
+ * Un hilo revisa periódicamente el retraso de replicación (SHOW SLAVE STATUS) de cada réplica.
+ * Las réplicas con más de maxLagSeconds de retraso, con la replicación detenida o que no
+ * responden, dejan de recibir lecturas hasta que se recuperen. Si no hay ninguna réplica
+ * disponible, las lecturas van al primario.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    public static final String PRIMARY = "primary";
+    private static final String REPLICATION_STATUS = "SHOW SLAVE STATUS";
+    private static final String SECONDS_BEHIND = "Seconds_Behind_Master";
+    private static final long UNKNOWN_LAG = -1;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final List<Replica> replicas;
+    private final long maxLagSeconds;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService lagChecker;
+    private volatile List<String> healthyReplicas = Collections.emptyList();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagSeconds,
+                                    long lagCheckIntervalMs) {
+        this.maxLagSeconds = maxLagSeconds;
+        this.replicas = new ArrayList<>(replicas.size());
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            this.replicas.add(new Replica(name, dataSource));
+            targets.put(name, dataSource);
+        });
+        this.setTargetDataSources(targets);
+        this.setDefaultTargetDataSource(primary);
+        this.afterPropertiesSet();
+
+        this.lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!this.replicas.isEmpty()) {
+            this.checkReplicationLag();
+            this.lagChecker.scheduleWithFixedDelay(this::checkReplicationLag, lagCheckIntervalMs, lagCheckIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        List<String> healthy = this.healthyReplicas;
+        if (healthy.isEmpty()) {
+            return PRIMARY;
+        }
+        return healthy.get(Math.floorMod(this.nextReplica.getAndIncrement(), healthy.size()));
+    }
+
+    //Retraso en segundos de la última revisión, -1 si no se pudo obtener
+    public long getReplicationLag(String replica) {
+        for (Replica candidate : this.replicas) {
+            if (candidate.name.equals(replica)) {
+                return candidate.lagSeconds;
+            }
+        }
+        return UNKNOWN_LAG;
+    }
+
+    public List<String> getReplicaNames() {
+        List<String> names = new ArrayList<>(this.replicas.size());
+        this.replicas.forEach(replica -> names.add(replica.name));
+        return names;
+    }
+
+    public boolean isHealthy(String replica) {
+        return this.healthyReplicas.contains(replica);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.lagChecker.shutdownNow();
+    }
+
+    private void checkReplicationLag() {
+        List<String> healthy = new ArrayList<>(this.replicas.size());
+        for (Replica replica : this.replicas) {
+            replica.lagSeconds = this.readReplicationLag(replica);
+            boolean available = replica.lagSeconds != UNKNOWN_LAG && replica.lagSeconds <= this.maxLagSeconds;
+            if (available) {
+                healthy.add(replica.name);
+            }
+            if (available != this.healthyReplicas.contains(replica.name)) {
+                this.logger.warn("Replica {} is now {} (lag: {}s)", replica.name, available ? "in use" : "out of rotation", replica.lagSeconds);
+            }
+        }
+        this.healthyReplicas = Collections.unmodifiableList(healthy);
+    }
+
+    private long readReplicationLag(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(REPLICATION_STATUS)) {
+            if (!resultSet.next()) {
+                return 0; //No está configurada como réplica, se asume sin retraso
+            }
+            long lag = resultSet.getLong(SECONDS_BEHIND);
+            return resultSet.wasNull() ? UNKNOWN_LAG : lag; //NULL: la replicación está detenida
+        } catch (SQLException e) {
+            this.logger.error("Could not read the replication lag of {}: {}", replica.name, e.getMessage());
+            return UNKNOWN_LAG;
+        }
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile long lagSeconds = UNKNOWN_LAG;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+}
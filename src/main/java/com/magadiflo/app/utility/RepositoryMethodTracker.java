@@ -0,0 +1,45 @@
+package com.magadiflo.app.utility;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Se registra como advice en los proxies de los repositorios de Spring Data
+ * (ejm. IUserRepository) y guarda en un ThreadLocal el método del repositorio
+ * que se está ejecutando. De esa manera, el SlowQueryListener puede indicar
+ * qué método del repositorio originó cada sentencia SQL lenta.
+ * <p>
+ * Se restaura el valor anterior al finalizar, ya que un método del repositorio
+ * puede terminar llamando a otro (ejm. save() que internamente hace un merge).
+ */
+public class RepositoryMethodTracker implements MethodInterceptor {
+
+    private static final ThreadLocal<String> CURRENT_METHOD = new ThreadLocal<>();
+
+    private final String repositoryName;
+
+    public RepositoryMethodTracker(Class<?> repositoryInterface) {
+        this.repositoryName = repositoryInterface.getSimpleName();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String previous = CURRENT_METHOD.get();
+        CURRENT_METHOD.set(this.repositoryName + "." + invocation.getMethod().getName());
+        try {
+            return invocation.proceed();
+        } finally {
+            if (previous == null) {
+                CURRENT_METHOD.remove();
+            } else {
+                CURRENT_METHOD.set(previous);
+            }
+        }
+    }
+
+    //Devuelve null si la sentencia no se originó desde un repositorio (ejm. el ddl-auto de Hibernate)
+    public static String currentMethod() {
+        return CURRENT_METHOD.get();
+    }
+
+}
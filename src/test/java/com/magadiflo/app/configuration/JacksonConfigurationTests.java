@@ -0,0 +1,128 @@
+package com.magadiflo.app.configuration;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.magadiflo.app.domain.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifica que los convertidores CBOR y Smile que usa Spring MVC son los de JacksonConfiguration
+ * (no los que Spring MVC crea por defecto), que escriben las fechas igual que el JSON y que
+ * una página de /user/list ocupa menos que en JSON.
+ */
+class JacksonConfigurationTests {
+
+    private static final int USERS = 100;
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class))
+            .withUserConfiguration(JacksonConfiguration.class);
+
+    @Test
+    void configuredBinaryConvertersReplaceTheDefaultOnes() {
+        this.contextRunner.run(context -> {
+            List<HttpMessageConverter<?>> converters = context.getBean(HttpMessageConverters.class).getConverters();
+            MappingJackson2CborHttpMessageConverter cbor = context.getBean(MappingJackson2CborHttpMessageConverter.class);
+            MappingJackson2SmileHttpMessageConverter smile = context.getBean(MappingJackson2SmileHttpMessageConverter.class);
+
+            assertThat(converters).filteredOn(MappingJackson2CborHttpMessageConverter.class::isInstance).containsExactly(cbor);
+            assertThat(converters).filteredOn(MappingJackson2SmileHttpMessageConverter.class::isInstance).containsExactly(smile);
+            //JSON sigue siendo el formato por defecto
+            int json = this.indexOf(converters, MappingJackson2HttpMessageConverter.class);
+            assertThat(json).isLessThan(converters.indexOf(cbor)).isLessThan(converters.indexOf(smile));
+
+            Object afterburner = new AfterburnerModule().getTypeId();
+            assertThat(cbor.getObjectMapper().getRegisteredModuleIds()).contains(afterburner);
+            assertThat(smile.getObjectMapper().getRegisteredModuleIds()).contains(afterburner);
+        });
+    }
+
+    @Test
+    void cborWritesDatesLikeJson() {
+        this.contextRunner.run(context -> {
+            User user = new User();
+            user.setUsername("martin");
+            user.setJoinDate(Instant.parse("2024-01-02T03:04:05Z"));
+
+            byte[] cbor = context.getBean(MappingJackson2CborHttpMessageConverter.class).getObjectMapper().writeValueAsBytes(user);
+            JsonNode cborUser = new ObjectMapper(new CBORFactory()).readTree(cbor);
+            JsonNode jsonUser = context.getBean(ObjectMapper.class).valueToTree(user);
+
+            assertThat(cborUser.get("joinDate").isTextual()).isTrue();
+            assertThat(cborUser.get("joinDate")).isEqualTo(jsonUser.get("joinDate"));
+            assertThat(cborUser.get("username").asText()).isEqualTo("martin");
+        });
+    }
+
+    @Test
+    void binaryFormatsAreSmallerThanJsonAndRoundTrip() {
+        this.contextRunner.run(context -> {
+            ObjectMapper json = context.getBean(ObjectMapper.class);
+            ObjectMapper cbor = context.getBean(MappingJackson2CborHttpMessageConverter.class).getObjectMapper();
+            ObjectMapper smile = context.getBean(MappingJackson2SmileHttpMessageConverter.class).getObjectMapper();
+            List<User> users = this.users();
+
+            byte[] jsonPayload = json.writeValueAsBytes(users);
+            for (ObjectMapper binary : new ObjectMapper[]{cbor, smile}) {
+                byte[] payload = binary.writeValueAsBytes(users);
+                JavaType type = binary.getTypeFactory().constructCollectionType(List.class, User.class);
+                List<User> decoded = binary.readValue(payload, type);
+
+                assertThat(payload.length).isLessThan(jsonPayload.length);
+                assertThat(decoded).hasSize(USERS);
+                assertThat(decoded.get(USERS - 1).getUsername()).isEqualTo("user" + (USERS - 1));
+                assertThat(decoded.get(USERS - 1).getJoinDate()).isEqualTo(users.get(USERS - 1).getJoinDate());
+            }
+        });
+    }
+
+    private List<User> users() {
+        List<User> users = new ArrayList<>(USERS);
+        Instant joinDate = Instant.parse("2024-01-02T03:04:05Z");
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUserId(String.valueOf(1_000_000_000L + i));
+            user.setFirstName("First" + i);
+            user.setLastName("Last" + i);
+            user.setUsername("user" + i);
+            user.setEmail("user" + i + "@example.com");
+            user.setProfileImageUrl("http://localhost:8081/user/image/profile/user" + i);
+            user.setJoinDate(joinDate.plusSeconds(i));
+            user.setLastLoginDate(joinDate.plusSeconds(2L * i));
+            user.setRole("ROLE_USER");
+            user.setAuthorities(new String[]{"user:read"});
+            user.setActive(true);
+            user.setNotLocked(true);
+            users.add(user);
+        }
+        return users;
+    }
+
+    private int indexOf(List<HttpMessageConverter<?>> converters, Class<?> type) {
+        for (int i = 0; i < converters.size(); i++) {
+            if (converters.get(i).getClass() == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
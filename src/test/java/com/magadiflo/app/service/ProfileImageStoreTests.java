@@ -0,0 +1,121 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.exception.domain.ImageTooLargeException;
+import com.magadiflo.app.exception.domain.NotAnImageFileException;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Detección del tipo de imagen por sus magic bytes, lectura de las dimensiones y límites de ProfileImageStore
+ */
+class ProfileImageStoreTests {
+
+    private static final int MAX_WIDTH = 100;
+    private static final int MAX_HEIGHT = 80;
+
+    private final ProfileImageStore profileImageStore = new ProfileImageStore(DataSize.ofKilobytes(64), MAX_WIDTH, MAX_HEIGHT);
+
+    @Test
+    void acceptsPngJpegAndGifWithinTheLimits() throws Exception {
+        for (String format : new String[]{"png", "jpg", "gif"}) {
+            byte[] image = image(format, MAX_WIDTH, MAX_HEIGHT);
+            Path received = this.profileImageStore.receive(new ByteArrayInputStream(image), image.length);
+            try {
+                assertThat(Files.readAllBytes(received)).as(format).isEqualTo(image);
+            } finally {
+                this.profileImageStore.discard(received);
+            }
+            assertThat(received).doesNotExist();
+        }
+    }
+
+    @Test
+    void rejectsImagesLargerThanTheMaximumDimensions() throws Exception {
+        for (String format : new String[]{"png", "jpg", "gif"}) {
+            byte[] tooWide = image(format, MAX_WIDTH + 1, 10);
+            assertThatThrownBy(() -> this.profileImageStore.receive(new ByteArrayInputStream(tooWide), -1))
+                    .as(format).isInstanceOf(ImageTooLargeException.class);
+            byte[] tooHigh = image(format, 10, MAX_HEIGHT + 1);
+            assertThatThrownBy(() -> this.profileImageStore.receive(new ByteArrayInputStream(tooHigh), -1))
+                    .as(format).isInstanceOf(ImageTooLargeException.class);
+        }
+    }
+
+    @Test
+    void readsTheJpegSizeAfterOtherSegments() throws Exception {
+        //SOI, APP1 (metadatos) de 1000 bytes, SOF0 de 300x20
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0x03, (byte) 0xE8});
+        jpeg.write(new byte[998]);
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xC0, 0x00, 0x11, 0x08, 0x00, 0x14, 0x01, 0x2C});
+
+        assertThatThrownBy(() -> this.profileImageStore.receive(new ByteArrayInputStream(jpeg.toByteArray()), -1))
+                .isInstanceOf(ImageTooLargeException.class);
+    }
+
+    @Test
+    void rejectsContentThatIsNotAnImage() {
+        byte[] text = "<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> this.profileImageStore.receive(new ByteArrayInputStream(text), text.length))
+                .isInstanceOf(NotAnImageFileException.class);
+    }
+
+    @Test
+    void rejectsTruncatedOrZeroSizedHeaders() {
+        byte[] pngSignatureOnly = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+        assertThatThrownBy(() -> this.profileImageStore.receive(new ByteArrayInputStream(pngSignatureOnly), -1))
+                .isInstanceOf(NotAnImageFileException.class);
+
+        byte[] zeroWidthGif = {'G', 'I', 'F', '8', '9', 'a', 0x00, 0x00, 0x0A, 0x00};
+        assertThatThrownBy(() -> this.profileImageStore.receive(new ByteArrayInputStream(zeroWidthGif), -1))
+                .isInstanceOf(NotAnImageFileException.class);
+
+        byte[] jpegWithoutFrame = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+        assertThatThrownBy(() -> this.profileImageStore.receive(new ByteArrayInputStream(jpegWithoutFrame), -1))
+                .isInstanceOf(NotAnImageFileException.class);
+    }
+
+    @Test
+    void rejectsADeclaredLengthOverTheMaximumWithoutReading() {
+        InputStream unreadable = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("The stream must not be read");
+            }
+        };
+        assertThatThrownBy(() -> this.profileImageStore.receive(unreadable, DataSize.ofKilobytes(65).toBytes()))
+                .isInstanceOf(ImageTooLargeException.class);
+    }
+
+    @Test
+    void rejectsAStreamLongerThanTheMaximumSize() throws Exception {
+        //Cabecera válida seguida de más bytes que el máximo, el tamaño no se declara
+        byte[] image = image("png", 10, 10);
+        byte[] oversized = new byte[(int) DataSize.ofKilobytes(64).toBytes() + 1];
+        System.arraycopy(image, 0, oversized, 0, image.length);
+
+        assertThatThrownBy(() -> this.profileImageStore.receive(new ByteArrayInputStream(oversized), -1))
+                .isInstanceOf(ImageTooLargeException.class);
+    }
+
+    private static byte[] image(String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertThat(ImageIO.write(image, format, output)).isTrue();
+        return output.toByteArray();
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.magadiflo.app.service;
+
+import com.magadiflo.app.domain.UserChange;
+import com.magadiflo.app.domain.UserChangeSet;
+import com.magadiflo.app.enumeration.UserChangeType;
+import com.magadiflo.app.repository.IUserChangeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Lógica de los huecos de versiones de UserChangeFeed (sin BD, el repositorio es un mock)
+ */
+class UserChangeFeedTests {
+
+    private static final long SETTLE_MS = 10_000;
+
+    private final IUserChangeRepository userChangeRepository = mock(IUserChangeRepository.class);
+    private final UserChangeFeed userChangeFeed = new UserChangeFeed(this.userChangeRepository, new SimpleMeterRegistry(),
+            SETTLE_MS, 30, 1000, 500, 256, 1000, 1800000, 1);
+
+    @Test
+    void contiguousVersionsAreReturnedWithHasMoreWhenThePageIsFull() {
+        UserChangeSet page = UserChangeFeed.settledPage(changes(Instant.now(), 11, 12, 13), 10, 3);
+
+        assertThat(page.getChanges()).extracting(UserChange::getVersion).containsExactly(11L, 12L, 13L);
+        assertThat(page.getNextSince()).isEqualTo(13);
+        assertThat(page.isHasMore()).isTrue();
+    }
+
+    @Test
+    void readingStopsAtAGapEvenIfTheLaterChangeIsOld() {
+        UserChangeSet page = UserChangeFeed.settledPage(changes(Instant.now().minus(Duration.ofDays(1)), 11, 12, 14), 10, 3);
+
+        assertThat(page.getChanges()).extracting(UserChange::getVersion).containsExactly(11L, 12L);
+        assertThat(page.getNextSince()).isEqualTo(12);
+        assertThat(page.isHasMore()).isFalse();
+    }
+
+    @Test
+    void gapRightAfterSinceReturnsNothing() {
+        UserChangeSet page = UserChangeFeed.settledPage(changes(Instant.now(), 12, 13), 10, 500);
+
+        assertThat(page.getChanges()).isEmpty();
+        assertThat(page.getNextSince()).isEqualTo(10);
+        assertThat(page.isHasMore()).isFalse();
+    }
+
+    @Test
+    void skippedVersionsAreNotReturnedButAdvanceNextSince() {
+        List<UserChange> rows = changes(Instant.now(), 11, 12, 13);
+        rows.get(1).setType(UserChangeType.SKIPPED);
+
+        UserChangeSet page = UserChangeFeed.settledPage(rows, 10, 3);
+
+        assertThat(page.getChanges()).extracting(UserChange::getVersion).containsExactly(11L, 13L);
+        assertThat(page.getNextSince()).isEqualTo(13);
+        assertThat(page.isHasMore()).isTrue();
+    }
+
+    @Test
+    void recentGapIsNotFilled() {
+        when(this.userChangeRepository.findByVersionGreaterThanOrderByVersionAsc(eq(10L), any(Pageable.class)))
+                .thenReturn(changes(Instant.now(), 13));
+
+        assertThat(this.userChangeFeed.fillGap(10)).isFalse();
+        verify(this.userChangeRepository, never()).insertSkipped(anyLong(), any(Instant.class));
+    }
+
+    @Test
+    void noLaterChangeMeansNoGap() {
+        when(this.userChangeRepository.findByVersionGreaterThanOrderByVersionAsc(eq(10L), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+
+        assertThat(this.userChangeFeed.fillGap(10)).isFalse();
+        verify(this.userChangeRepository, never()).insertSkipped(anyLong(), any(Instant.class));
+    }
+
+    @Test
+    void settledGapIsFilledWithSkippedVersions() {
+        when(this.userChangeRepository.findByVersionGreaterThanOrderByVersionAsc(eq(10L), any(Pageable.class)))
+                .thenReturn(changes(Instant.now().minusMillis(SETTLE_MS + 1000), 13));
+
+        assertThat(this.userChangeFeed.fillGap(10)).isTrue();
+        verify(this.userChangeRepository).insertSkipped(eq(11L), any(Instant.class));
+        verify(this.userChangeRepository).insertSkipped(eq(12L), any(Instant.class));
+        verify(this.userChangeRepository, never()).insertSkipped(eq(13L), any(Instant.class));
+    }
+
+    @Test
+    void versionCommittedWhileFillingIsKept() {
+        when(this.userChangeRepository.findByVersionGreaterThanOrderByVersionAsc(eq(10L), any(Pageable.class)))
+                .thenReturn(changes(Instant.now().minusMillis(SETTLE_MS + 1000), 13));
+        when(this.userChangeRepository.insertSkipped(eq(11L), any(Instant.class)))
+                .thenThrow(new DuplicateKeyException("Duplicate entry '11' for key 'PRIMARY'"));
+
+        //La versión 11 se confirmó, la siguiente lectura la entrega y la 12 se cierra igual
+        assertThat(this.userChangeFeed.fillGap(10)).isTrue();
+        verify(this.userChangeRepository).insertSkipped(eq(12L), any(Instant.class));
+    }
+
+    private static List<UserChange> changes(Instant changedDate, long... versions) {
+        UserChange[] changes = new UserChange[versions.length];
+        for (int i = 0; i < versions.length; i++) {
+            changes[i] = new UserChange(UserChangeType.UPDATED, "user-" + versions[i], "user" + versions[i]);
+            changes[i].setVersion(versions[i]);
+            changes[i].setChangedDate(changedDate);
+        }
+        return Arrays.asList(changes);
+    }
+
+}